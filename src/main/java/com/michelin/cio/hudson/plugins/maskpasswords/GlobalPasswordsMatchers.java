@@ -0,0 +1,187 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.LiteralEngine;
+import com.michelin.cio.hudson.plugins.util.AhoCorasickLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.IncrementalLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil;
+import com.michelin.cio.hudson.plugins.util.MultiLineLiteralMatcher;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The global passwords as compiled for the builds, by charset, see
+ * {@link MaskPasswordsConfig#getGlobalPasswordsMatcher}.
+ *
+ * <p>Instances are immutable, and a new one is published on every change of
+ * the passwords, even when nothing compiled changes, so that what was
+ * compiled from the passwords read before is not published over it. The
+ * passwords compiled are then updated with the ones added or
+ * removed rather than compiled again, see {@link IncrementalLiteralMatcher}.
+ * They are compiled again as a whole, when next needed, after
+ * {@link #MAX_CHANGES} changes, or when a password spanning several lines
+ * changes.</p>
+ *
+ * <p>Which passwords were removed is only known once the passwords cleared
+ * are read again, so they are kept meanwhile: with the engines which do not
+ * keep the passwords themselves, they are compiled again instead.</p>
+ */
+final class GlobalPasswordsMatchers {
+
+    /**
+     * Number of passwords, and URL-encoded forms, added or removed after
+     * which the passwords are compiled again as a whole.
+     */
+    static final int MAX_CHANGES = 1024;
+
+    static final GlobalPasswordsMatchers EMPTY = empty(MaskPasswordsOutputStream.LITERAL_ENGINE);
+
+    private final LiteralEngine engine;
+    /** By charset name. */
+    private final Map<String, LiteralMatcher> matchers;
+    /**
+     * The passwords, and their URL-encoded forms, {@link #matchers} were
+     * compiled from, when the passwords were cleared since: which of them
+     * were added back, or not, is only known once they are read again.
+     */
+    @CheckForNull
+    private final Set<String> cleared;
+
+    private GlobalPasswordsMatchers(LiteralEngine engine, Map<String, LiteralMatcher> matchers,
+                                    @CheckForNull Set<String> cleared) {
+        this.engine = engine;
+        this.matchers = matchers;
+        this.cleared = cleared;
+    }
+
+    static GlobalPasswordsMatchers empty(LiteralEngine engine) {
+        return new GlobalPasswordsMatchers(engine, Collections.emptyMap(), null);
+    }
+
+    /**
+     * @return {@code null} if the passwords are to be compiled for this
+     *         charset, or to be {@linkplain #reconciled reconciled} first
+     */
+    @CheckForNull
+    LiteralMatcher get(Charset charset) {
+        return cleared == null ? matchers.get(charset.name()) : null;
+    }
+
+    boolean isCleared() {
+        return cleared != null;
+    }
+
+    GlobalPasswordsMatchers with(Charset charset, LiteralMatcher matcher) {
+        Map<String, LiteralMatcher> updated = new HashMap<>(matchers);
+        updated.put(charset.name(), matcher);
+        return new GlobalPasswordsMatchers(engine, Collections.unmodifiableMap(updated), cleared);
+    }
+
+    /**
+     * Returns these matchers once the given password was added.
+     */
+    GlobalPasswordsMatchers added(String password) {
+        if (cleared != null || matchers.isEmpty()) {
+            return new GlobalPasswordsMatchers(engine, matchers, cleared);
+        }
+        return update(MaskPasswordsUtil.withUrlEncodedVariants(List.of(password)), Collections.emptySet());
+    }
+
+    /**
+     * Returns these matchers once the passwords were cleared.
+     *
+     * @param passwords the passwords before they were cleared
+     */
+    GlobalPasswordsMatchers cleared(Supplier<? extends Collection<String>> passwords) {
+        if (matchers.isEmpty() || cleared != null) {
+            return new GlobalPasswordsMatchers(engine, matchers, cleared);
+        }
+        if (engine != LiteralEngine.TRIE) {
+            return empty(engine);
+        }
+        return new GlobalPasswordsMatchers(engine, matchers, MaskPasswordsUtil.withUrlEncodedVariants(passwords.get()));
+    }
+
+    /**
+     * Returns these matchers once updated with the passwords added back, or
+     * not, since they were cleared.
+     *
+     * @param passwords the passwords now
+     */
+    GlobalPasswordsMatchers reconciled(Collection<String> passwords) {
+        if (cleared == null) {
+            return this;
+        }
+        Set<String> now = MaskPasswordsUtil.withUrlEncodedVariants(passwords);
+        Set<String> additions = new HashSet<>(now);
+        additions.removeAll(cleared);
+        Set<String> removals = new HashSet<>(cleared);
+        removals.removeAll(now);
+        return update(additions, removals);
+    }
+
+    private GlobalPasswordsMatchers update(Set<String> additions, Set<String> removals) {
+        Map<String, LiteralMatcher> updated = new HashMap<>();
+        for (Map.Entry<String, LiteralMatcher> entry : matchers.entrySet()) {
+            LiteralMatcher matcher = update(engine, entry.getValue(), Charset.forName(entry.getKey()), additions, removals);
+            if (matcher != null) {
+                updated.put(entry.getKey(), matcher);
+            }
+        }
+        return new GlobalPasswordsMatchers(engine, Collections.unmodifiableMap(updated), null);
+    }
+
+    /**
+     * @return {@code null} if the passwords are to be compiled again
+     */
+    @CheckForNull
+    private static LiteralMatcher update(LiteralEngine engine, LiteralMatcher matcher, Charset charset,
+                                         Set<String> additions, Set<String> removals) {
+        if (additions.isEmpty() && removals.isEmpty()) {
+            return matcher;
+        }
+        if (hasMultiLine(additions) || hasMultiLine(removals)) {
+            return null;
+        }
+        AhoCorasickLiteralMatcher multiLine = null;
+        if (matcher instanceof MultiLineLiteralMatcher) {
+            multiLine = ((MultiLineLiteralMatcher) matcher).getMultiLine();
+            matcher = ((MultiLineLiteralMatcher) matcher).getSingleLine();
+        }
+        IncrementalLiteralMatcher updated = IncrementalLiteralMatcher.update(matcher,
+                bytes(additions, charset), bytes(removals, charset),
+                literals -> MaskPasswordsOutputStream.compile(engine, literals));
+        if (updated.changes() > MAX_CHANGES) {
+            return null;
+        }
+        return multiLine != null ? new MultiLineLiteralMatcher(updated, multiLine) : updated;
+    }
+
+    private static boolean hasMultiLine(Set<String> passwords) {
+        for (String password : passwords) {
+            if (password.indexOf('\n') >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<byte[]> bytes(Set<String> passwords, Charset charset) {
+        List<byte[]> r = new ArrayList<>(passwords.size());
+        for (String password : passwords) {
+            r.add(password.getBytes(charset));
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2026, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsBuildWrapper.VarPasswordPair;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.util.Secret;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Storage backend for large sets of global name/password pairs.
+ *
+ * <p>When enabled (see {@link #ENABLED}), the global pairs are no longer
+ * serialized as {@link Secret}s inside {@code MaskPasswordsConfig.xml}: they
+ * are written to {@code mask-passwords/secrets-N.xml} shards of
+ * {@link #SHARD_SIZE} entries each, and only the shards whose content changed
+ * are rewritten on save.</p>
+ *
+ * <p>In memory, pairs are held as two flat arrays of names and ciphertexts.
+ * Plain text values are decrypted once, when first needed (that is when the
+ * global passwords are first compiled or read), into a compact
+ * {@link DecryptedTable} rather than one {@link Secret} per pair. Nothing but
+ * the shards is ever written to disk.</p>
+ */
+public final class GlobalSecretStore {
+
+    /**
+     * Whether global name/password pairs are kept in this store rather than in
+     * {@code MaskPasswordsConfig.xml}. Existing pairs are migrated on startup.
+     */
+    public static final boolean ENABLED = SystemProperties.getBoolean(GlobalSecretStore.class.getName() + ".enabled");
+
+    /**
+     * Number of pairs per shard file.
+     */
+    static final int SHARD_SIZE = Math.max(1, SystemProperties.getInteger(GlobalSecretStore.class.getName() + ".shardSize", 1024));
+
+    static final String DIRECTORY = "mask-passwords";
+    private static final String SHARD_PREFIX = "secrets-";
+
+    private final File dir;
+
+    private String[] names = new String[0];
+    private String[] ciphertexts = new String[0];
+    private int size;
+    /**
+     * Digests of the shards as last read or written, to skip rewriting the
+     * unchanged ones.
+     */
+    private byte[][] shardDigests = new byte[0][];
+    /**
+     * Plain text values, aligned with {@link #names}, once decrypted, see
+     * {@link #decrypted()}.
+     */
+    @CheckForNull
+    private DecryptedTable table;
+    /**
+     * Content before the last {@link #clear()}, used to keep the ciphertext of
+     * pairs which are added back unchanged (which is what the global
+     * configuration form does on every save).
+     */
+    @CheckForNull
+    private Map<String, Integer> retiredByName;
+    private String[] retiredCiphertexts;
+    @CheckForNull
+    private DecryptedTable retiredTable;
+
+    private GlobalSecretStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Loads the store from the given directory, without decrypting its
+     * passwords yet. Missing or unreadable shards are logged and skipped, as
+     * are passwords which cannot be decrypted once they are.
+     */
+    public static GlobalSecretStore load(File dir) {
+        GlobalSecretStore store = new GlobalSecretStore(dir);
+        List<byte[]> digests = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            XmlFile file = store.getShardFile(i);
+            if (!file.exists()) {
+                break;
+            }
+            try {
+                Shard shard = (Shard) file.read();
+                int n = Math.min(shard.names.length, shard.values.length);
+                for (int j = 0; j < n; j++) {
+                    store.append(shard.names[j], shard.values[j]);
+                }
+                digests.add(shard.digest());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to load Mask Passwords secrets shard " + file, e);
+                digests.add(null);
+            }
+        }
+        store.shardDigests = digests.toArray(new byte[0][]);
+        return store;
+    }
+
+    /**
+     * Adds a pair to the store. Blank names and {@code null} passwords are
+     * ignored, as in {@link MaskPasswordsConfig#addGlobalVarPasswordPair}.
+     */
+    public synchronized void add(String name, @CheckForNull Secret password) {
+        if (StringUtils.isBlank(name) || password == null) {
+            return;
+        }
+        String plainText = password.getPlainText();
+        String ciphertext = null;
+        if (retiredByName != null) {
+            Integer previous = retiredByName.get(name);
+            if (previous != null && plainText.equals(retiredPlainText(previous))) {
+                ciphertext = retiredCiphertexts[previous];
+            }
+        }
+        if (ciphertext == null) {
+            ciphertext = password.getEncryptedValue();
+        }
+        append(name, ciphertext);
+        if (table != null) {
+            table.add(plainText);
+        }
+    }
+
+    /**
+     * Removes all pairs. Nothing is written until {@link #save()}.
+     */
+    public synchronized void clear() {
+        retiredByName = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            retiredByName.put(names[i], i);
+        }
+        retiredCiphertexts = Arrays.copyOf(ciphertexts, size);
+        retiredTable = table;
+        names = new String[0];
+        ciphertexts = new String[0];
+        size = 0;
+        table = new DecryptedTable();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the pairs of this store, for the configuration screen. Pairs
+     * whose password cannot be decrypted are skipped.
+     */
+    public synchronized List<VarPasswordPair> getPairs() {
+        List<VarPasswordPair> r = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Secret secret = Secret.decrypt(ciphertexts[i]);
+            if (secret == null) {
+                LOGGER.log(Level.WARNING, "Skipping Mask Passwords global password {0}: it cannot be decrypted", names[i]);
+                continue;
+            }
+            r.add(new VarPasswordPair(names[i], secret));
+        }
+        return r;
+    }
+
+    /**
+     * Returns the plain text passwords of this store, decrypting them on the
+     * first call.
+     */
+    public synchronized List<String> getPlainTexts() {
+        return decrypted().toList();
+    }
+
+    private DecryptedTable decrypted() {
+        if (table == null) {
+            DecryptedTable decrypted = new DecryptedTable();
+            for (int i = 0; i < size; i++) {
+                decrypted.add(decrypt(names[i], ciphertexts[i]));
+            }
+            table = decrypted;
+        }
+        return table;
+    }
+
+    /**
+     * Writes the shards which changed since they were last read or written,
+     * and deletes the ones which are not needed anymore.
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(dir.toPath());
+        int shardCount = (size + SHARD_SIZE - 1) / SHARD_SIZE;
+        byte[][] digests = new byte[shardCount][];
+        for (int i = 0; i < shardCount; i++) {
+            int from = i * SHARD_SIZE;
+            int to = Math.min(size, from + SHARD_SIZE);
+            Shard shard = new Shard(Arrays.copyOfRange(names, from, to), Arrays.copyOfRange(ciphertexts, from, to));
+            digests[i] = shard.digest();
+            if (i >= shardDigests.length || !MessageDigest.isEqual(digests[i], shardDigests[i])) {
+                getShardFile(i).write(shard);
+            }
+        }
+        for (int i = shardCount; getShardFile(i).exists(); i++) {
+            getShardFile(i).delete();
+        }
+        shardDigests = digests;
+        retiredByName = null;
+        retiredCiphertexts = null;
+        retiredTable = null;
+    }
+
+    private void append(String name, String ciphertext) {
+        if (size == names.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            names = Arrays.copyOf(names, capacity);
+            ciphertexts = Arrays.copyOf(ciphertexts, capacity);
+        }
+        names[size] = name;
+        ciphertexts[size] = ciphertext;
+        size++;
+    }
+
+    @CheckForNull
+    private String retiredPlainText(int i) {
+        if (retiredTable != null) {
+            return retiredTable.get(i);
+        }
+        Secret secret = Secret.decrypt(retiredCiphertexts[i]);
+        return secret != null ? secret.getPlainText() : null;
+    }
+
+    @CheckForNull
+    private static String decrypt(String name, String ciphertext) {
+        Secret secret = Secret.decrypt(ciphertext);
+        if (secret == null) {
+            LOGGER.log(Level.WARNING, "Unable to decrypt Mask Passwords global password {0}, it will not be masked", name);
+            return null;
+        }
+        return secret.getPlainText();
+    }
+
+    private XmlFile getShardFile(int i) {
+        return new XmlFile(new File(dir, SHARD_PREFIX + i + ".xml"));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Content of a shard file.
+     */
+    static final class Shard {
+        private final String[] names;
+        private final String[] values;
+
+        Shard(String[] names, String[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        byte[] digest() {
+            MessageDigest md = sha256();
+            for (int i = 0; i < names.length; i++) {
+                md.update(names[i].getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(values[i].getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return md.digest();
+        }
+    }
+
+    /**
+     * Plain text passwords packed into a single UTF-8 byte array, rather than
+     * one {@link Secret} and one {@link String} per entry.
+     */
+    static final class DecryptedTable {
+        private byte[] data = new byte[256];
+        private int[] offsets = new int[17];
+        private int size;
+
+        void add(@CheckForNull String plainText) {
+            byte[] bytes = plainText != null ? plainText.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            int start = offsets[size];
+            if (start + bytes.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(start + bytes.length, data.length * 2));
+            }
+            System.arraycopy(bytes, 0, data, start, bytes.length);
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[++size] = start + bytes.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @CheckForNull
+        String get(int i) {
+            int len = offsets[i + 1] - offsets[i];
+            return len == 0 ? null : new String(data, offsets[i], len, StandardCharsets.UTF_8);
+        }
+
+        @NonNull
+        List<String> toList() {
+            List<String> r = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String s = get(i);
+                if (s != null) {
+                    r.add(s);
+                }
+            }
+            return r;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(GlobalSecretStore.class.getName());
+
+}
@@ -0,0 +1,564 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.BinaryPolicy;
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.MatchListener;
+import com.michelin.cio.hudson.plugins.util.AnsiText;
+import com.michelin.cio.hudson.plugins.util.LineDecoder;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil;
+import com.michelin.cio.hudson.plugins.util.MaskSpans;
+import com.michelin.cio.hudson.plugins.util.PatternProfiler;
+import com.michelin.cio.hudson.plugins.util.SwarByteScanner;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.console.ConsoleNote;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil.patternMatch;
+import static com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil.secretsMask;
+
+/**
+ * Masks the lines of a {@link MaskPasswordsOutputStream}, one at a time, as
+ * its options say: around the {@link ConsoleNote}s, in the visible text of
+ * lines with ANSI escape sequences, in place, and binary output as set by
+ * its {@link BinaryPolicy}. Not thread-safe.
+ */
+final class LineMasker {
+
+    static final byte MASK_BYTE = '*';
+
+    static final byte[] MASKED_BYTES = MaskPasswordsUtil.MASKED_STRING.getBytes(StandardCharsets.US_ASCII);
+
+    private final LineDecoder decoder;
+    private final Charset charset;
+    private final String runName;
+    @CheckForNull
+    private final LiteralMatcher passwordsMatcher;
+    /** The patterns compiled from the passwords and the regexes, shared with the streams masking the same ones. */
+    private final SharedMatchers.Patterns patterns;
+    /**
+     * The passwords aggregated into a single regex, when not matched by
+     * {@link #passwordsMatcher}.
+     */
+    @CheckForNull
+    private final Pattern passwordsAsPattern;
+    /**
+     * Finds the bytes a password may start with, so that the lines without
+     * any skip {@link #passwordsAsPattern}.
+     */
+    @CheckForNull
+    private final SwarByteScanner passwordsFirstBytes;
+    private final List<Pattern> regexesAsPatterns;
+    /** Names of {@link #regexesAsPatterns}, in the same order, for the {@link PatternProfiler}. */
+    @CheckForNull
+    private List<String> regexKeys;
+    private final MaskSpans spans = new MaskSpans();
+    /** See {@link StreamOptions#preserveLength}. */
+    private final boolean preserveLength;
+    private final StreamOptions options;
+    /** Whether the last line masked was binary output replaced with {@link MaskPasswordsOutputStream#REDACTED}. */
+    private boolean redacted;
+    /** The visible bytes of the line being masked, and where each one is in it, when {@link StreamOptions#ansiAware}. */
+    private byte[] visibleBytes = new byte[0];
+    private int[] visibleOffsets = new int[0];
+    /** Told what the lines are masked for, for a {@link MaskingDryRun} only. */
+    @CheckForNull
+    private final MatchListener listener;
+
+    LineMasker(LineDecoder decoder, String runName, @CheckForNull LiteralMatcher passwordsMatcher,
+               SharedMatchers.Patterns patterns, StreamOptions options, @CheckForNull MatchListener listener) {
+        this.decoder = decoder;
+        this.charset = decoder.getCharset();
+        this.runName = runName;
+        this.passwordsMatcher = passwordsMatcher;
+        this.patterns = patterns;
+        this.passwordsAsPattern = patterns.passwordsAsPattern;
+        this.passwordsFirstBytes = patterns.passwordsFirstBytes;
+        this.regexesAsPatterns = patterns.regexesAsPatterns;
+        this.options = options;
+        this.preserveLength = options.preserveLength;
+        this.listener = listener;
+    }
+
+    /**
+     * @see MaskPasswordsOutputStream#withRegexKeys
+     */
+    void setRegexKeys(@CheckForNull List<String> keys) {
+        this.regexKeys = keys != null && keys.size() == regexesAsPatterns.size() ? keys : null;
+    }
+
+    /**
+     * A line of text is written: the next binary one is redacted again.
+     */
+    void textLine() {
+        redacted = false;
+    }
+
+    /**
+     * Masks a line of text, overwriting it when
+     * {@linkplain MaskPasswordsOutputStream#PRESERVE_LENGTH preserving the length}.
+     *
+     * @param premasked whether parts of multi-line passwords were masked already
+     * @param multiLineMatches number of multi-line passwords which ended in the line
+     */
+    MaskedLine mask(byte[] original, int originalLength, boolean premasked, int multiLineMatches) {
+        int note = options.noteAware ? ConsoleNote.findPreamble(original, 0, originalLength) : -1;
+        if (note >= 0) {
+            return maskAroundNotes(original, originalLength, note, premasked, multiLineMatches);
+        }
+        if (options.ansiAware && AnsiText.hasEscape(original, 0, originalLength)) {
+            return maskVisibleText(original, originalLength, premasked, multiLineMatches);
+        }
+        byte[] bytes = original;
+        int len = originalLength;
+        int literalMatches = multiLineMatches;
+        boolean masked = premasked;
+        if (passwordsMatcher != null && len > 0) {
+            spans.clear();
+            passwordsMatcher.findAll(bytes, 0, len, spans);
+            if (!spans.isEmpty()) {
+                literalMatches += spans.size();
+                reportPasswords(bytes);
+                spans.normalize();
+                if (preserveLength) {
+                    spans.fill(bytes, MASK_BYTE);
+                } else {
+                    bytes = spans.apply(bytes, 0, len, MASKED_BYTES);
+                    len = bytes.length;
+                }
+                masked = true;
+            }
+        }
+        boolean passwordsCandidate = passwordsAsPattern != null
+                && (passwordsFirstBytes == null || passwordsFirstBytes.indexOf(bytes, 0, len) < len);
+        if (!passwordsCandidate && regexesAsPatterns.isEmpty()) {
+            // nothing to match against characters: the line is only decoded to be logged
+            if (!masked) {
+                return MaskedLine.UNCHANGED;
+            }
+            MaskPasswordsUtil.logMaskedLine(runName, decoder.decode(bytes, 0, len));
+            // masked in place, or by the passwords matcher into a new array
+            return new MaskedLine(bytes == original ? null : bytes, true, literalMatches, 0);
+        }
+        String line = decoder.decode(bytes, 0, len);
+        List<String> secrets = List.of();
+        int regexMatches = 0;
+        if ((passwordsCandidate || !regexesAsPatterns.isEmpty()) && StringUtils.isNotBlank(line)) {
+            if (passwordsCandidate) {
+                secrets = passwordSecrets(line);
+                literalMatches += secrets.size();
+            }
+            if (!regexesAsPatterns.isEmpty()) {
+                List<String> regexSecrets = regexSecrets(line);
+                regexMatches = regexSecrets.size();
+                if (secrets.isEmpty()) {
+                    secrets = regexSecrets;
+                } else {
+                    secrets.addAll(regexSecrets);
+                }
+            }
+        }
+        if (preserveLength) {
+            return maskInPlace(secrets, line, bytes, len, masked, literalMatches, regexMatches);
+        }
+        if (!secrets.isEmpty()) {
+            line = secretsMask(secrets, line, runName);
+        } else if (masked) {
+            MaskPasswordsUtil.logMaskedLine(runName, line);
+        }
+        byte[] output = line.getBytes(charset);
+        if (!masked && secrets.isEmpty() && Arrays.equals(output, 0, output.length, original, 0, originalLength)) {
+            return MaskedLine.UNCHANGED;
+        }
+        return new MaskedLine(output, masked || !secrets.isEmpty(), literalMatches, regexMatches);
+    }
+
+    /**
+     * Returns the passwords matched by {@link #passwordsAsPattern} in the
+     * given text.
+     */
+    private List<String> passwordSecrets(CharSequence text) {
+        List<String> secrets = patternMatch(List.of(passwordsAsPattern), text, false);
+        if (listener != null) {
+            for (String secret : secrets) {
+                listener.password(secret);
+            }
+        }
+        return secrets;
+    }
+
+    /**
+     * Returns what the regexes matched in the given text, one regex at a
+     * time, and timed, when the {@link #listener} is told about each.
+     */
+    private List<String> regexSecrets(CharSequence text) {
+        if (listener == null) {
+            return patternMatch(regexesAsPatterns, text, true, regexKeys);
+        }
+        List<String> secrets = new ArrayList<>();
+        for (int k = 0; k < regexesAsPatterns.size(); k++) {
+            long start = System.nanoTime();
+            List<String> found = patternMatch(List.of(regexesAsPatterns.get(k)), text, false);
+            listener.regex(k, found, System.nanoTime() - start);
+            secrets.addAll(found);
+        }
+        return secrets;
+    }
+
+    /**
+     * Tells the {@link #listener} about the passwords in {@link #spans}, as
+     * found in {@code b}.
+     */
+    private void reportPasswords(byte[] b) {
+        if (listener != null) {
+            for (int i = 0; i < spans.size(); i++) {
+                listener.password(decoder.decode(b, spans.start(i), spans.end(i) - spans.start(i)));
+            }
+        }
+    }
+
+    /**
+     * Masks a line of binary output as set by {@link MaskPasswordsOutputStream#BINARY_POLICY}, without
+     * decoding it.
+     */
+    MaskedLine maskBinary(byte[] bytes, int len, boolean premasked, int literalMatches) {
+        switch (options.binaryPolicy) {
+            case SKIP:
+                return new MaskedLine(new byte[0], true, literalMatches, 0);
+            case REDACT:
+                if (preserveLength) {
+                    for (int i = 0; i < len; i++) {
+                        if (bytes[i] != '\n' && bytes[i] != '\r') {
+                            bytes[i] = MASK_BYTE;
+                        }
+                    }
+                    return new MaskedLine(null, true, literalMatches, 0);
+                }
+                if (redacted) {
+                    return new MaskedLine(new byte[0], true, literalMatches, 0);
+                }
+                redacted = true;
+                return new MaskedLine((MaskPasswordsOutputStream.REDACTED + "\n").getBytes(StandardCharsets.US_ASCII),
+                        true, literalMatches, 0);
+            default:
+                LiteralMatcher matcher = passwordsMatcher != null ? passwordsMatcher : patterns.binaryMatcher();
+                if (matcher != null && len > 0) {
+                    spans.clear();
+                    matcher.findAll(bytes, 0, len, spans);
+                    if (!spans.isEmpty()) {
+                        literalMatches += spans.size();
+                        reportPasswords(bytes);
+                        spans.normalize();
+                        if (preserveLength) {
+                            spans.fill(bytes, MASK_BYTE);
+                        } else {
+                            return new MaskedLine(spans.apply(bytes, 0, len, MASKED_BYTES), true, literalMatches, 0);
+                        }
+                        premasked = true;
+                    }
+                }
+                return premasked ? new MaskedLine(null, true, literalMatches, 0) : MaskedLine.UNCHANGED;
+        }
+    }
+
+    /**
+     * Masks a line with ANSI escape sequences, matching the passwords and the
+     * regexes against its visible text only, see
+     * {@link MaskPasswordsOutputStream#ANSI_AWARE}.
+     */
+    private MaskedLine maskVisibleText(byte[] original, int originalLength, boolean premasked, int literalMatches) {
+        byte[] bytes = original;
+        int len = originalLength;
+        boolean masked = premasked;
+        if (passwordsMatcher != null) {
+            int visible = visibleBytes(bytes, len);
+            spans.clear();
+            passwordsMatcher.findAll(visibleBytes, 0, visible, spans);
+            if (!spans.isEmpty()) {
+                literalMatches += spans.size();
+                reportPasswords(visibleBytes);
+                spans.normalize();
+                if (preserveLength) {
+                    for (int k = 0; k < spans.size(); k++) {
+                        for (int i = spans.start(k); i < spans.end(k); i++) {
+                            bytes[visibleOffsets[i]] = MASK_BYTE;
+                        }
+                    }
+                } else {
+                    bytes = AnsiText.mask(bytes, len, visibleOffsets, spans, MASKED_BYTES);
+                    len = bytes.length;
+                }
+                masked = true;
+            }
+        }
+
+        String line = decoder.decode(bytes, 0, len);
+        AnsiText text = new AnsiText(line);
+        List<String> secrets = new ArrayList<>();
+        int regexMatches = 0;
+        if (!StringUtils.isBlank(text)) {
+            if (passwordsAsPattern != null) {
+                List<String> passwords = passwordSecrets(text);
+                literalMatches += passwords.size();
+                secrets.addAll(passwords);
+            }
+            if (!regexesAsPatterns.isEmpty()) {
+                List<String> regexSecrets = regexSecrets(text);
+                regexMatches = regexSecrets.size();
+                secrets.addAll(regexSecrets);
+            }
+        }
+        if (!secrets.isEmpty()) {
+            spans.clear();
+            text.find(secrets, spans);
+            spans.normalize();
+            line = text.mask(spans, MaskPasswordsUtil.MASKED_STRING, preserveLength ? charset : null);
+        }
+        if (!masked && secrets.isEmpty()) {
+            return MaskedLine.UNCHANGED;
+        }
+        MaskPasswordsUtil.logMaskedLine(runName, line);
+        if (preserveLength && secrets.isEmpty()) {
+            // masked in place
+            return new MaskedLine(null, true, literalMatches, regexMatches);
+        }
+        return new MaskedLine(line.getBytes(charset), true, literalMatches, regexMatches);
+    }
+
+    /**
+     * Masks a line with {@link ConsoleNote}s, see
+     * {@link MaskPasswordsOutputStream#NOTE_AWARE}: the notes are copied as
+     * they are, without being decoded nor matched against, and only the text
+     * around them is masked. The passwords and the regexes are matched
+     * against all that text at once, so that a note does not hide a secret:
+     * the parts of a secret on each side of a note are masked, the mask
+     * itself being written where the secret starts.
+     *
+     * @param note where the first note starts
+     */
+    private MaskedLine maskAroundNotes(byte[] bytes, int len, int note, boolean premasked, int literalMatches) {
+        // [start, end) of the text before each note, and after the last one
+        List<int[]> parts = new ArrayList<>();
+        int start = 0;
+        while (note >= 0) {
+            parts.add(new int[] {start, note});
+            int postamble = indexOf(bytes, note + ConsoleNote.PREAMBLE.length, len, ConsoleNote.POSTAMBLE);
+            start = postamble < 0 ? len : postamble + ConsoleNote.POSTAMBLE.length;
+            note = ConsoleNote.findPreamble(bytes, start, len - start);
+        }
+        parts.add(new int[] {start, len});
+
+        // the text without the notes, and where each part starts in it
+        ByteArrayOutputStream joined = new ByteArrayOutputStream(len);
+        int[] partStarts = new int[parts.size() + 1];
+        for (int k = 0; k < parts.size(); k++) {
+            int[] part = parts.get(k);
+            partStarts[k] = joined.size();
+            joined.write(bytes, part[0], part[1] - part[0]);
+        }
+        partStarts[parts.size()] = joined.size();
+        byte[] text = joined.toByteArray();
+
+        boolean masked = premasked;
+        spans.clear();
+        if (passwordsMatcher != null && text.length > 0) {
+            passwordsMatcher.findAll(text, 0, text.length, spans);
+            if (!spans.isEmpty()) {
+                literalMatches += spans.size();
+                reportPasswords(text);
+                spans.normalize();
+                masked = true;
+            }
+        }
+        String[] texts = new String[parts.size()];
+        StringBuilder visible = new StringBuilder();
+        for (int k = 0; k < texts.length; k++) {
+            byte[] b = maskPart(text, partStarts[k], partStarts[k + 1]);
+            texts[k] = decoder.decode(b, 0, b.length);
+            visible.append(texts[k]);
+        }
+
+        List<String> secrets = new ArrayList<>();
+        int regexMatches = 0;
+        if (StringUtils.isNotBlank(visible)) {
+            String v = visible.toString();
+            if (passwordsAsPattern != null) {
+                List<String> passwords = passwordSecrets(v);
+                literalMatches += passwords.size();
+                secrets.addAll(passwords);
+            }
+            if (!regexesAsPatterns.isEmpty()) {
+                List<String> regexSecrets = regexSecrets(v);
+                regexMatches = regexSecrets.size();
+                secrets.addAll(regexSecrets);
+            }
+        }
+        // the characters of the visible text within a secret
+        BitSet secretChars = new BitSet(visible.length());
+        for (String secret : secrets) {
+            if (!secret.isEmpty()) {
+                for (int i = visible.indexOf(secret); i >= 0; i = visible.indexOf(secret, i + secret.length())) {
+                    secretChars.set(i, i + secret.length());
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len + 16);
+        StringBuilder maskedText = new StringBuilder();
+        int offset = 0;
+        for (int k = 0; k < texts.length; k++) {
+            String t = maskPart(texts[k], secretChars, offset);
+            offset += texts[k].length();
+            maskedText.append(t);
+            byte[] b = t.getBytes(charset);
+            out.write(b, 0, b.length);
+            if (k + 1 < texts.length) {
+                // the note, as is
+                int noteEnd = parts.get(k + 1)[0];
+                out.write(bytes, parts.get(k)[1], noteEnd - parts.get(k)[1]);
+            }
+        }
+        byte[] output = out.toByteArray();
+        if (!masked && secrets.isEmpty()) {
+            return Arrays.equals(output, 0, output.length, bytes, 0, len)
+                    ? MaskedLine.UNCHANGED : new MaskedLine(output, false, literalMatches, regexMatches);
+        }
+        MaskPasswordsUtil.logMaskedLine(runName, maskedText.toString());
+        return new MaskedLine(output, true, literalMatches, regexMatches);
+    }
+
+    /**
+     * Returns {@code text[from, to)} with the (normalized) {@link #spans}
+     * masked: a span starting before {@code from} was masked already, so
+     * only its bytes are dropped, unless {@linkplain #preserveLength
+     * preserving the length}.
+     */
+    private byte[] maskPart(byte[] text, int from, int to) {
+        ByteArrayOutputStream r = new ByteArrayOutputStream(to - from);
+        int pos = from;
+        for (int i = 0; i < spans.size(); i++) {
+            int start = Math.max(spans.start(i), from);
+            int end = Math.min(spans.end(i), to);
+            if (start >= end) {
+                continue;
+            }
+            r.write(text, pos, start - pos);
+            if (preserveLength) {
+                for (int j = start; j < end; j++) {
+                    r.write(MASK_BYTE);
+                }
+            } else if (spans.start(i) >= from) {
+                r.write(MASKED_BYTES, 0, MASKED_BYTES.length);
+            }
+            pos = end;
+        }
+        r.write(text, pos, to - pos);
+        return r.toByteArray();
+    }
+
+    /**
+     * Like {@link #maskPart(byte[], int, int)}, for the characters of
+     * {@code part} set in {@code secretChars}, starting at {@code offset}.
+     */
+    private String maskPart(String part, BitSet secretChars, int offset) {
+        int next = secretChars.nextSetBit(offset);
+        if (next < 0 || next >= offset + part.length()) {
+            return part;
+        }
+        StringBuilder r = new StringBuilder(part.length());
+        int i = 0;
+        while (i < part.length()) {
+            if (!secretChars.get(offset + i)) {
+                r.append(part.charAt(i++));
+                continue;
+            }
+            int end = Math.min(secretChars.nextClearBit(offset + i) - offset, part.length());
+            if (preserveLength) {
+                r.append("*".repeat(part.substring(i, end).getBytes(charset).length));
+            } else if (offset + i == 0 || !secretChars.get(offset + i - 1)) {
+                r.append(MaskPasswordsUtil.MASKED_STRING);
+            }
+            i = end;
+        }
+        return r.toString();
+    }
+
+    /**
+     * Overwrites the secrets found in the line with {@code *}s, see
+     * {@link MaskPasswordsOutputStream#PRESERVE_LENGTH}.
+     *
+     * @param masked whether passwords were overwritten already
+     */
+    private MaskedLine maskInPlace(List<String> secrets, String line, byte[] bytes, int len, boolean masked,
+                                   int literalMatches, int regexMatches) {
+        if (!secrets.isEmpty() && line.length() != len) {
+            // not one byte per character: the offsets of the secrets in the line are not the ones in the bytes
+            byte[] output = MaskPasswordsUtil.secretsMaskPreservingLength(secrets, line, runName, charset).getBytes(charset);
+            return new MaskedLine(output, true, literalMatches, regexMatches);
+        }
+        for (String secret : secrets) {
+            for (int i = secret.isEmpty() ? -1 : line.indexOf(secret); i >= 0; i = line.indexOf(secret, i + secret.length())) {
+                Arrays.fill(bytes, i, i + secret.length(), MASK_BYTE);
+            }
+        }
+        if (!masked && secrets.isEmpty()) {
+            return MaskedLine.UNCHANGED;
+        }
+        MaskPasswordsUtil.logMaskedLine(runName, decoder.decode(bytes, 0, len));
+        return new MaskedLine(null, true, literalMatches, regexMatches);
+    }
+
+    /**
+     * Copies the visible bytes of {@code b[0, len)} to {@link #visibleBytes},
+     * see {@link AnsiText#visibleBytes}.
+     */
+    private int visibleBytes(byte[] b, int len) {
+        if (visibleBytes.length < len) {
+            visibleBytes = new byte[len];
+            visibleOffsets = new int[len];
+        }
+        return AnsiText.visibleBytes(b, len, visibleBytes, visibleOffsets);
+    }
+
+    /**
+     * Returns the index of {@code s} in {@code b[from, to)}, -1 if not found.
+     */
+    static int indexOf(byte[] b, int from, int to, byte[] s) {
+        for (int i = from; i <= to - s.length; i++) {
+            if (b[i] == s[0] && Arrays.equals(b, i, i + s.length, s, 0, s.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * What masking a line gave, as kept in the line cache of the stream.
+     */
+    static final class MaskedLine {
+
+        static final MaskedLine UNCHANGED = new MaskedLine(null, false, 0, 0);
+
+        /** What to write instead of the line, {@code null} to write it as is, or as masked in place. */
+        @CheckForNull
+        final byte[] output;
+        final boolean masked;
+        final int literalMatches;
+        final int regexMatches;
+
+        MaskedLine(@CheckForNull byte[] output, boolean masked, int literalMatches, int regexMatches) {
+            this.output = output;
+            this.masked = masked;
+            this.literalMatches = literalMatches;
+            this.regexMatches = regexMatches;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.AnsiText;
+import com.michelin.cio.hudson.plugins.util.LineDecoder;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil;
+import com.michelin.cio.hudson.plugins.util.MaskSpans;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.console.ConsoleNote;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tells how much of the line a {@link MaskPasswordsOutputStream} is writing
+ * can be masked before the line ends, see
+ * {@link MaskPasswordsOutputStream#PARTIAL_LINE_MILLIS} and
+ * {@link MaskPasswordsOutputStream#SEGMENT_CARRIAGE_RETURNS}.
+ *
+ * <p>The line is decoded as it grows: each call only decodes what was
+ * written since the previous one. Not thread-safe.</p>
+ */
+final class LineSettler {
+
+    private final LineDecoder decoder;
+    @CheckForNull
+    private final LiteralMatcher passwordsMatcher;
+    /** The patterns a partial line is checked against, see {@link MaskPasswordsUtil#settledLength}. */
+    private final List<Pattern> settlingPatterns;
+    /** See {@link MaskPasswordsOutputStream#ANSI_AWARE}. */
+    private final boolean ansiAware;
+    private final MaskSpans spans = new MaskSpans();
+    /** The first {@link #decodedBytes} of the line, decoded. */
+    private final StringBuilder decoded = new StringBuilder();
+    private int decodedBytes;
+    /** A number of bytes at the beginning of the line, and the number of characters they decode into. */
+    private int knownBytes = -1;
+    private int knownChars;
+
+    LineSettler(LineDecoder decoder, @CheckForNull LiteralMatcher passwordsMatcher, List<Pattern> settlingPatterns,
+                boolean ansiAware) {
+        this.decoder = decoder;
+        this.passwordsMatcher = passwordsMatcher;
+        this.settlingPatterns = settlingPatterns;
+        this.ansiAware = ansiAware;
+    }
+
+    /**
+     * Returns how many bytes of the line {@code b[0, len)} can be masked on
+     * their own: no password nor regex match straddles them and the rest of
+     * the line, as far as it can be told from what was written so far.
+     */
+    int settledLength(byte[] b, int len) {
+        knownBytes = -1;
+        // a console note is never cut, as what comes after its beginning would not be recognized as a note
+        int settled = unterminatedNote(b, len);
+        if (ansiAware) {
+            settled = unterminatedEscape(b, settled, len);
+        }
+        if (passwordsMatcher != null) {
+            // a password may start in the last bytes and end in the next write
+            int holdBack = Math.max(0, passwordsMatcher.maxLength() - 1);
+            spans.clear();
+            if (ansiAware) {
+                // counted in visible bytes, which escape sequences may split a password into
+                byte[] visibleBytes = new byte[len];
+                int[] visibleOffsets = new int[len];
+                int visible = AnsiText.visibleBytes(b, len, visibleBytes, visibleOffsets);
+                MaskSpans visibleSpans = new MaskSpans();
+                passwordsMatcher.findAll(visibleBytes, 0, visible, visibleSpans);
+                for (int i = 0; i < visibleSpans.size(); i++) {
+                    spans.add(visibleOffsets[visibleSpans.start(i)], visibleOffsets[visibleSpans.end(i) - 1] + 1);
+                }
+                int before = Arrays.binarySearch(visibleOffsets, 0, visible, settled);
+                before = before >= 0 ? before : -before - 1;
+                settled = before > holdBack ? visibleOffsets[before - holdBack] : 0;
+            } else {
+                settled -= holdBack;
+                passwordsMatcher.findAll(b, 0, len, spans);
+            }
+            spans.normalize();
+        }
+        CharSequence line = settlingPatterns.isEmpty() ? null : decode(b, len);
+        int previous = -1;
+        while (settled > 0 && settled != previous) {
+            previous = settled;
+            settled = settled < len ? decoder.characterStart(b, settled) : decoder.wholeLength(b, len);
+            if (passwordsMatcher != null) {
+                for (int i = 0; i < spans.size(); i++) {
+                    if (spans.start(i) < settled && settled < spans.end(i)) {
+                        settled = spans.start(i);
+                    }
+                }
+            }
+            if (line != null && settled > 0) {
+                int chars = chars(b, len, line, settled);
+                int settledChars = MaskPasswordsUtil.settledLength(settlingPatterns, line, chars);
+                if (settledChars < chars) {
+                    settled = bytes(line, settledChars);
+                }
+            }
+        }
+        return Math.max(settled, 0);
+    }
+
+    /**
+     * The first {@code settled} bytes of the line, as returned by
+     * {@link #settledLength}, were written out and removed from it.
+     */
+    void written(int settled) {
+        if (settled == knownBytes && settled <= decodedBytes) {
+            decoded.delete(0, knownChars);
+            decodedBytes -= settled;
+        } else {
+            reset();
+        }
+    }
+
+    /**
+     * The line ended.
+     */
+    void reset() {
+        decoded.setLength(0);
+        decodedBytes = 0;
+        knownBytes = -1;
+    }
+
+    /**
+     * Returns {@code b[0, len)} decoded, decoding only what was not yet.
+     */
+    private CharSequence decode(byte[] b, int len) {
+        decodedBytes += decoder.decodeWhole(b, decodedBytes, len - decodedBytes, decoded);
+        if (decodedBytes == len) {
+            return decoded;
+        }
+        // a character is not complete yet
+        return new StringBuilder(decoded).append(decoder.decode(b, decodedBytes, len - decodedBytes));
+    }
+
+    /**
+     * Returns the number of characters the first {@code bytes} of the line
+     * decode into, {@code bytes} being where a character starts.
+     */
+    private int chars(byte[] b, int len, CharSequence line, int bytes) {
+        int chars;
+        if (bytes >= len) {
+            chars = line.length();
+        } else if (bytes <= decodedBytes && oneCharPerByte()) {
+            chars = bytes;
+        } else {
+            chars = decoder.decode(b, 0, bytes).length();
+        }
+        knownBytes = bytes;
+        knownChars = chars;
+        return chars;
+    }
+
+    /**
+     * Returns the number of bytes the first {@code chars} of the line were
+     * decoded from.
+     */
+    private int bytes(CharSequence line, int chars) {
+        int bytes = chars <= decoded.length() && oneCharPerByte() ? chars
+                : line.subSequence(0, chars).toString().getBytes(decoder.getCharset()).length;
+        knownBytes = bytes;
+        knownChars = chars;
+        return bytes;
+    }
+
+    /**
+     * Whether each byte decoded so far decoded into one character, as ASCII
+     * does, in which case the offsets in bytes and in characters are the
+     * same.
+     */
+    private boolean oneCharPerByte() {
+        return decoded.length() == decodedBytes;
+    }
+
+    /**
+     * Returns where the last {@link ConsoleNote} without an end starts in
+     * {@code b[0, len)}, {@code len} if none.
+     */
+    private static int unterminatedNote(byte[] b, int len) {
+        int note = ConsoleNote.findPreamble(b, 0, len);
+        while (note >= 0) {
+            int postamble = LineMasker.indexOf(b, note + ConsoleNote.PREAMBLE.length, len, ConsoleNote.POSTAMBLE);
+            if (postamble < 0) {
+                return note;
+            }
+            int next = postamble + ConsoleNote.POSTAMBLE.length;
+            note = ConsoleNote.findPreamble(b, next, len - next);
+        }
+        return len;
+    }
+
+    /**
+     * Returns where the escape sequence running over {@code limit} in
+     * {@code b[0, len)} starts, {@code limit} if none.
+     */
+    private static int unterminatedEscape(byte[] b, int limit, int len) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (b[i] == AnsiText.ESC) {
+                // one ending with the line may not be complete yet
+                int end = AnsiText.escapeEnd(b, i, len);
+                return end > limit || end == len ? i : limit;
+            }
+        }
+        return limit;
+    }
+}
@@ -26,6 +26,8 @@
 package com.michelin.cio.hudson.plugins.maskpasswords;
 
 import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsConfig.VarMaskRegexEntry;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.RegexAnalyzer;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
@@ -41,12 +43,16 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
+import hudson.model.Item;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.Channel;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.FormValidation;
 import hudson.util.Secret;
+import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildWrapper;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
@@ -56,21 +62,28 @@ import org.jenkinsci.plugins.structs.describable.CustomDescribableModel;
 import org.jenkinsci.plugins.structs.describable.UninstantiatedDescribable;
 import org.jvnet.localizer.Localizable;
 import org.jvnet.localizer.ResourceBundleHolder;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.verb.POST;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Build wrapper that alters the console so that passwords don't get displayed.
@@ -95,20 +108,16 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
 
     @Override
     public ConsoleLogFilter createLoggerDecorator(Run<?, ?> build) {
-        List<String> allPasswords = new ArrayList<>();  // all passwords to be masked
+        List<String> allPasswords = new ArrayList<>();  // all passwords to be masked, but the global ones
         List<String> allRegexes = new ArrayList<>(); // all regexes to be masked
+        List<String> allRegexKeys = new ArrayList<>(); // their names, in the same order
         MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
 
-        // global passwords
-        List<VarPasswordPair> globalVarPasswordPairs = config.getGlobalVarPasswordPairs();
-        for(VarPasswordPair globalVarPasswordPair: globalVarPasswordPairs) {
-            allPasswords.add(globalVarPasswordPair.getPlainTextPassword());
-        }
-
         // global regexes
         List<MaskPasswordsConfig.VarMaskRegexEntry> globalVarMaskRegexes = config.getGlobalVarMaskRegexesU();
         for(MaskPasswordsConfig.VarMaskRegexEntry globalVarMaskRegex: globalVarMaskRegexes) {
             allRegexes.add(globalVarMaskRegex.getValue());
+            allRegexKeys.add(globalVarMaskRegex.getKey());
         }
 
         // job's passwords
@@ -127,6 +136,7 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
                 String regex = entry.getRegexString();
                 if(StringUtils.isNotBlank(regex)) {
                     allRegexes.add(regex);
+                    allRegexKeys.add(entry.getKey());
                 }
             }
         }
@@ -146,7 +156,8 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
             }
         }
 
-        return new FilterImpl(allPasswords, allRegexes);
+        // global passwords are looked up by the filter itself, see FilterImpl#decorateLogger
+        return new FilterImpl(allPasswords, allRegexes, allRegexKeys, build.getExternalizableId(), build.getCharset());
     }
 
     @Override
@@ -158,18 +169,71 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
 
         private static final long serialVersionUID = 1L;
 
+        /**
+         * The passwords of the build, but the global ones: there can be many
+         * of them, and they are compiled once for all the builds, see
+         * {@link MaskPasswordsConfig#getGlobalPasswordsMatcher}.
+         */
         private final List<Secret> allPasswords;
         private final List<String> allRegexes;
+        /**
+         * The names of {@link #allRegexes}, for the masking profiler: not
+         * known to filters serialized before they were kept.
+         */
+        @CheckForNull
+        private final List<String> allRegexKeys;
+        /**
+         * The global passwords, only when this filter is sent to an agent,
+         * which cannot look them up.
+         */
+        @CheckForNull
+        private final List<Secret> globalPasswords;
+        /**
+         * The run the masking statistics go to: {@link #decorateLogger} is not
+         * given it with Pipeline.
+         */
+        @CheckForNull
+        private final String runId;
+        /**
+         * The charset of the console, which the passwords are compiled for:
+         * by name, as agents are sent this filter.
+         */
+        @CheckForNull
+        private final String charset;
 
-        FilterImpl(List<String> allPasswords, List<String> allRegexes) {
+        FilterImpl(List<String> allPasswords, List<String> allRegexes, List<String> allRegexKeys,
+                   @CheckForNull String runId, Charset charset) {
+            this.runId = runId;
+            this.charset = charset.name();
             this.allPasswords = new ArrayList<>();
             this.allRegexes = new ArrayList<>();
+            this.allRegexKeys = new ArrayList<>(allRegexKeys);
+            this.globalPasswords = null;
             for (String password : allPasswords) {
                 this.allPasswords.add(Secret.fromString(password));
             }
             this.allRegexes.addAll(allRegexes);
         }
 
+        private FilterImpl(FilterImpl filter, List<String> globalPasswords) {
+            this.runId = filter.runId;
+            this.charset = filter.charset;
+            this.allPasswords = filter.allPasswords;
+            this.allRegexes = filter.allRegexes;
+            this.allRegexKeys = filter.allRegexKeys;
+            this.globalPasswords = new ArrayList<>();
+            for (String password : globalPasswords) {
+                this.globalPasswords.add(Secret.fromString(password));
+            }
+        }
+
+        private Object writeReplace() {
+            if (globalPasswords == null && Channel.current() != null) {
+                return new FilterImpl(this, MaskPasswordsConfig.getInstance().getGlobalPasswords());
+            }
+            return this;
+        }
+
         @Override
         public OutputStream decorateLogger(Run run, OutputStream logger) {
             List<String> passwords = new ArrayList<>();
@@ -178,7 +242,33 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
             }
             List<String> regexes = new ArrayList<>(allRegexes);
             String runName = run != null ? run.getFullDisplayName() : "";
-            return new MaskPasswordsOutputStream(logger, passwords, regexes, runName);
+            // not known to filters serialized before it was kept
+            Charset cs = charset != null ? Charset.forName(charset) : Charset.defaultCharset();
+
+            // global passwords, compiled once for all the builds: only the ones
+            // above are compiled for this one, unless they cannot be layered
+            LiteralMatcher passwordsMatcher = null;
+            if (globalPasswords != null) {
+                for (Secret password : globalPasswords) {
+                    passwords.add(password.getPlainText());
+                }
+            } else {
+                MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+                LiteralMatcher globalPasswordsMatcher = config.getGlobalPasswordsMatcher(cs);
+                if (globalPasswordsMatcher != null) {
+                    passwordsMatcher = MaskPasswordsOutputStream.compileLiterals(globalPasswordsMatcher, passwords, cs);
+                }
+                if (passwordsMatcher == null) {
+                    passwords.addAll(0, config.getGlobalPasswords());
+                }
+            }
+            if (passwordsMatcher == null) {
+                passwordsMatcher = MaskPasswordsOutputStream.compileLiterals(passwords, cs);
+            }
+            return new MaskPasswordsOutputStream(logger, passwordsMatcher, passwordsMatcher == null ? passwords : null,
+                    regexes, runName, cs)
+                    .withStatisticsFor(runId)
+                    .withRegexKeys(allRegexKeys);
         }
 
     }
@@ -366,8 +456,59 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
             return regex;
         }
 
+        /**
+         * Validates a regex to be masked, warning about the constructs found
+         * by {@link RegexAnalyzer}, and then only about its throughput on the
+         * sample build log.
+         *
+         * <p>Measuring the throughput takes up to a tenth of a second of CPU,
+         * hence the permission check, and the regexes found nothing about,
+         * as every one on a configuration page being loaded, are not.</p>
+         *
+         * @param item the job being configured, {@code null} for the global configuration
+         */
+        static FormValidation check(@CheckForNull Item item, @CheckForNull String regex) {
+            if (item != null) {
+                item.checkPermission(Item.CONFIGURE);
+            } else {
+                Jenkins.get().checkPermission(Jenkins.MANAGE);
+            }
+            if (StringUtils.isBlank(regex)) {
+                return FormValidation.ok();
+            }
+            ResourceBundleHolder messages = ResourceBundleHolder.get(MaskPasswordsBuildWrapper.class);
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error(messages.format("Regex.Invalid", e.getDescription()));
+            }
+
+            List<FormValidation> results = new ArrayList<>();
+            for (RegexAnalyzer.Finding finding : RegexAnalyzer.analyze(regex)) {
+                String key = finding.getConstruct() == RegexAnalyzer.Construct.NESTED_QUANTIFIER
+                        ? "Regex.NestedQuantifier" : "Regex.OverlappingAlternation";
+                results.add(FormValidation.warning(messages.format(key, finding.getFragment())));
+            }
+            if (results.isEmpty()) {
+                return FormValidation.ok();
+            }
+            double throughput = RegexAnalyzer.megabytesPerSecond(pattern);
+            String megabytesPerSecond = String.format(Locale.ENGLISH, "%.1f", throughput);
+            results.add(throughput < RegexAnalyzer.SLOW_MEGABYTES_PER_SECOND
+                    ? FormValidation.warning(messages.format("Regex.Slow", megabytesPerSecond))
+                    : FormValidation.ok(messages.format("Regex.Throughput", megabytesPerSecond)));
+            return FormValidation.aggregate(results);
+        }
+
         @Extension
-        public static class DescriptorImpl extends Descriptor<VarMaskRegex> {}
+        public static class DescriptorImpl extends Descriptor<VarMaskRegex> {
+
+            @POST
+            public FormValidation doCheckRegex(@AncestorInPath Item item, @QueryParameter String regex) {
+                return check(item, regex);
+            }
+        }
 
     }
 
@@ -482,6 +623,14 @@ public final class MaskPasswordsBuildWrapper extends SimpleBuildWrapper {
             return true;
         }
 
+        /**
+         * Validates the regexes of both the job and the global configuration.
+         */
+        @POST
+        public FormValidation doCheckValue(@AncestorInPath Item item, @QueryParameter String value) {
+            return VarMaskRegex.check(item, value);
+        }
+
     }
 
     /**
@@ -27,6 +27,7 @@ package com.michelin.cio.hudson.plugins.maskpasswords;
 import com.google.common.annotations.VisibleForTesting;
 import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsBuildWrapper.VarMaskRegex;
 import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsBuildWrapper.VarPasswordPair;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -34,12 +35,16 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.XmlFile;
 import hudson.cli.CLICommand;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterDefinition.ParameterDescriptor;
 import hudson.model.ParameterValue;
 import jenkins.model.Jenkins;
+import jenkins.util.AtmostOneTaskExecutor;
+import jenkins.util.SystemProperties;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.plugins.structs.describable.CustomDescribableModel;
@@ -54,6 +59,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -62,6 +68,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -78,6 +89,23 @@ public class MaskPasswordsConfig {
     @GuardedBy("CONFIG_FILE_LOCK")
     private static MaskPasswordsConfig config;
 
+    /**
+     * How long, in milliseconds, a build waits for the global passwords being
+     * compiled in the background, see {@link #prewarm}, before compiling them
+     * itself.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Lowered from the script console when builds wait too long")
+    public static long PREWARM_WAIT_MILLIS = Math.max(0,
+            SystemProperties.getLong(MaskPasswordsConfig.class.getName() + ".prewarmWaitMillis", 5000L));
+
+    /**
+     * Compiles the global passwords for the charset of the builds, which is
+     * the default one unless they are told otherwise.
+     */
+    private static final AtmostOneTaskExecutor<Void> PREWARM = new AtmostOneTaskExecutor<>(MaskPasswordsConfig::prewarmNow);
+    @CheckForNull
+    private static volatile Future<Void> prewarming;
+
     /**
      * Contains the set of {@link ParameterDefinition}s whose value must be
      * masked in builds' console.
@@ -132,6 +160,20 @@ public class MaskPasswordsConfig {
      * @since 2.9
      */
     private boolean globalVarEnableGlobally;
+    /**
+     * Holds the global key/password pairs instead of
+     * {@link #globalVarPasswordPairs} when {@link GlobalSecretStore#ENABLED}.
+     */
+    @CheckForNull
+    private transient GlobalSecretStore secretStore;
+
+    /**
+     * The global passwords compiled by charset, see
+     * {@link #getGlobalPasswordsMatcher}: a new version is published on
+     * every change, so that a compilation under way cannot store stale ones.
+     */
+    private transient AtomicReference<GlobalPasswordsMatchers> globalPasswordsMatchers =
+            new AtomicReference<>(GlobalPasswordsMatchers.EMPTY);
 
     public MaskPasswordsConfig() {
         maskPasswordsParamDefClasses = new LinkedHashSet<>();
@@ -148,6 +190,9 @@ public class MaskPasswordsConfig {
             if (paramValueCache_nonMaskedClasses == null) {
                 paramValueCache_nonMaskedClasses = new HashSet<>();
             }
+            if (globalPasswordsMatchers == null) {
+                globalPasswordsMatchers = new AtomicReference<>(GlobalPasswordsMatchers.EMPTY);
+            }
         }
        
      return this;
@@ -171,7 +216,13 @@ public class MaskPasswordsConfig {
             LOGGER.fine("addGlobalVarPasswordPair NOT adding pair with null var or password");
             return;
         }
-        getGlobalVarPasswordPairsList().add(varPasswordPair);
+        if (secretStore != null) {
+            secretStore.add(varPasswordPair.getVar(), varPasswordPair.getPassword());
+        } else {
+            getGlobalVarPasswordPairsList().add(varPasswordPair);
+        }
+        String password = varPasswordPair.getPlainTextPassword();
+        globalPasswordsMatchers.updateAndGet(matchers -> matchers.added(password));
     }
 
     /**
@@ -268,8 +319,12 @@ public class MaskPasswordsConfig {
     }
     
     public synchronized void clear() {
+        globalPasswordsMatchers.updateAndGet(matchers -> matchers.cleared(this::getGlobalPasswords));
         maskPasswordsParamDefClasses.clear();
         getGlobalVarPasswordPairsList().clear();
+        if (secretStore != null) {
+            secretStore.clear();
+        }
         getGlobalVarMaskRegexesList().clear();
         getGlobalVarMaskRegexesUList().clear();
         getGlobalVarMaskRegexesMap().clear();
@@ -304,6 +359,29 @@ public class MaskPasswordsConfig {
         return new XmlFile(new File(Jenkins.get().getRootDir(), CONFIG_FILE));
     }
 
+    /**
+     * Switches the global key/password pairs to a {@link GlobalSecretStore},
+     * moving the ones read from {@code MaskPasswordsConfig.xml} into it.
+     */
+    private void attachSecretStore() {
+        secretStore = GlobalSecretStore.load(new File(Jenkins.get().getRootDir(), GlobalSecretStore.DIRECTORY));
+        if (!getGlobalVarPasswordPairsList().isEmpty()) {
+            LOGGER.log(Level.INFO, "Moving {0} global key/password pairs to the Mask Passwords secrets store",
+                    getGlobalVarPasswordPairsList().size());
+            for (VarPasswordPair varPasswordPair : getGlobalVarPasswordPairsList()) {
+                secretStore.add(varPasswordPair.getVar(), varPasswordPair.getPassword());
+            }
+            getGlobalVarPasswordPairsList().clear();
+            // called by load(), under CONFIG_FILE_LOCK, which the prewarming
+            // would wait for: the initializer prewarms them anyway
+            try {
+                write(this);
+            } catch (IOException e) {
+                LOGGER.warning("Failed to save MaskPasswordsConfig due to IOException: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Returns the list of key/password pairs defined at the global level.
      *
@@ -314,6 +392,9 @@ public class MaskPasswordsConfig {
      * @since 2.7
      */
     public List<VarPasswordPair> getGlobalVarPasswordPairs() {
+        if (secretStore != null) {
+            return secretStore.getPairs();
+        }
         List<VarPasswordPair> r = new ArrayList<>(getGlobalVarPasswordPairsList().size());
 
         // deep copy
@@ -323,6 +404,125 @@ public class MaskPasswordsConfig {
         return r;
     }
 
+    /**
+     * Returns the passwords of the key/password pairs defined at the global
+     * level, as needed to mask them from builds' console.
+     *
+     * <p>Unlike {@link #getGlobalVarPasswordPairs()}, this does not decrypt
+     * the passwords again on every call when a {@link GlobalSecretStore} is
+     * used. The list may contain {@code null} values.</p>
+     */
+    public List<String> getGlobalPasswords() {
+        if (secretStore != null) {
+            return secretStore.getPlainTexts();
+        }
+        List<String> r = new ArrayList<>(getGlobalVarPasswordPairsList().size());
+        for (VarPasswordPair varPasswordPair: getGlobalVarPasswordPairsList()) {
+            r.add(varPasswordPair.getPlainTextPassword());
+        }
+        return r;
+    }
+
+    /**
+     * Returns the passwords of the key/password pairs defined at the global
+     * level compiled for a console in the given charset, once for all the
+     * builds: a build then only compiles its own passwords on top of them,
+     * see {@link MaskPasswordsOutputStream#compileLiterals(LiteralMatcher, java.util.Collection, Charset)}.
+     * When they change, they are updated rather than compiled again, see
+     * {@link GlobalPasswordsMatchers}.
+     *
+     * @return {@code null} if the passwords are to be matched as a regex
+     */
+    @CheckForNull
+    public LiteralMatcher getGlobalPasswordsMatcher(Charset charset) {
+        return getGlobalPasswordsMatcher(charset, true);
+    }
+
+    /**
+     * @param forBuild whether a build is asking, rather than the passwords
+     *                 being compiled in the background: the build waits for
+     *                 the latter, if under way, rather than compiling them
+     *                 again, and its lookup is reported to {@link MaskingMetrics}
+     */
+    @CheckForNull
+    private LiteralMatcher getGlobalPasswordsMatcher(Charset charset, boolean forBuild) {
+        if (MaskPasswordsOutputStream.LITERAL_ENGINE == MaskPasswordsOutputStream.LiteralEngine.REGEX) {
+            return null;
+        }
+        if (forBuild && charset.equals(Charset.defaultCharset()) && globalPasswordsMatchers.get().get(charset) == null) {
+            awaitPrewarm();
+        }
+        while (true) {
+            GlobalPasswordsMatchers current = globalPasswordsMatchers.get();
+            LiteralMatcher matcher = current.get(charset);
+            if (matcher != null) {
+                if (forBuild) {
+                    MaskingMetrics.get().matcherCacheHit();
+                }
+                return matcher;
+            }
+            if (current.isCleared()) {
+                globalPasswordsMatchers.compareAndSet(current, current.reconciled(getGlobalPasswords()));
+                continue;
+            }
+            if (forBuild) {
+                MaskingMetrics.get().matcherCacheMiss();
+            }
+            // kept here rather than shared by fingerprint, see SharedMatchers
+            matcher = MaskPasswordsOutputStream.compileLiteralsUnshared(getGlobalPasswords(), charset);
+            // if the passwords changed meanwhile, what was compiled is still
+            // good for the build asking, as if it had started a bit earlier
+            if (matcher != null) {
+                globalPasswordsMatchers.compareAndSet(current, current.with(charset, matcher));
+            }
+            return matcher;
+        }
+    }
+
+    /**
+     * Compiles the global passwords in the background, at startup and once
+     * they were saved, so that the next build does not have to. A build
+     * started meanwhile waits for them, up to {@link #PREWARM_WAIT_MILLIS}.
+     *
+     * <p>Only the passwords of the default charset are compiled, and waited
+     * for: the builds with another charset compile theirs when they start.</p>
+     */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void prewarm() {
+        prewarming = PREWARM.submit();
+    }
+
+    private static Void prewarmNow() {
+        try {
+            if (getInstance().getGlobalPasswordsMatcher(Charset.defaultCharset(), false) != null) {
+                MaskingMetrics.get().prewarmed();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to compile the Mask Passwords global passwords", e);
+        }
+        return null;
+    }
+
+    private static void awaitPrewarm() {
+        Future<Void> future = prewarming;
+        if (future == null || future.isDone()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean timedOut = false;
+        try {
+            future.get(PREWARM_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.log(Level.FINE, "Compiling the global passwords ourselves after waiting for {0} ms", PREWARM_WAIT_MILLIS);
+            timedOut = true;
+        } catch (ExecutionException e) {
+            // logged by the task
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        MaskingMetrics.get().awaitedPrewarm(System.nanoTime() - start, timedOut);
+    }
+
     /**
      * Returns the list of regexes defined at the global level.
      *
@@ -581,9 +781,11 @@ public class MaskPasswordsConfig {
 
     public static MaskPasswordsConfig load() {
         LOGGER.entering(CLASS_NAME, "load");
+        MaskingEvents.ConfigLoad event = new MaskingEvents.ConfigLoad();
+        event.begin();
+        MaskPasswordsConfig loaded = null;
         try {
-            MaskPasswordsConfig file = (MaskPasswordsConfig) getConfigFile().read();
-            return (MaskPasswordsConfig) getConfigFile().read();
+            loaded = (MaskPasswordsConfig) getConfigFile().read();
         }
         catch(FileNotFoundException | NoSuchFileException e) {
             LOGGER.log(Level.WARNING, "No configuration found for Mask Passwords plugin");
@@ -591,16 +793,39 @@ public class MaskPasswordsConfig {
         catch(Exception e) {
             LOGGER.log(Level.WARNING, "Unable to load Mask Passwords plugin configuration from " + CONFIG_FILE, e);
         }
-        LOGGER.log(Level.FINE, "No Mask Passwords config file loaded; using defaults");
-        return new MaskPasswordsConfig();
+        if (loaded == null) {
+            LOGGER.log(Level.FINE, "No Mask Passwords config file loaded; using defaults");
+            loaded = new MaskPasswordsConfig();
+        }
+        if (GlobalSecretStore.ENABLED) {
+            loaded.attachSecretStore();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.passwords = loaded.secretStore != null
+                    ? loaded.secretStore.size()
+                    : loaded.getGlobalVarPasswordPairsList().size();
+            event.regexes = loaded.getGlobalVarMaskRegexesMap().size();
+            event.secretStore = loaded.secretStore != null;
+            event.commit();
+        }
+        return loaded;
     }
 
     public static void save(MaskPasswordsConfig config) throws IOException {
         LOGGER.entering(CLASS_NAME, "save");
-        getConfigFile().write(config);
+        write(config);
+        prewarm();
         LOGGER.exiting(CLASS_NAME, "save");
     }
 
+    private static void write(MaskPasswordsConfig config) throws IOException {
+        if (config.secretStore != null) {
+            config.secretStore.save();
+        }
+        getConfigFile().write(config);
+    }
+
     static void saveSafeIO(MaskPasswordsConfig config) {
         try {
             save(config);
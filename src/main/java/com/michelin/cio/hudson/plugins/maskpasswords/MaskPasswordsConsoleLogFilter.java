@@ -24,6 +24,7 @@
 
 package com.michelin.cio.hudson.plugins.maskpasswords;
 
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
 import hudson.Extension;
 import hudson.console.ConsoleLogFilter;
 import hudson.model.Run;
@@ -31,6 +32,7 @@ import hudson.model.Run;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -55,7 +57,7 @@ public class MaskPasswordsConsoleLogFilter extends ConsoleLogFilter  implements
 
   @SuppressWarnings("rawtypes")
   @Override
-  public OutputStream decorateLogger(Run _ignore, OutputStream logger) throws IOException, InterruptedException {
+  public OutputStream decorateLogger(Run run, OutputStream logger) throws IOException, InterruptedException {
       // check the config
       MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
       if(! config.isEnabledGlobally()) {
@@ -67,19 +69,24 @@ public class MaskPasswordsConsoleLogFilter extends ConsoleLogFilter  implements
       // build our config
       List<String> passwords = new ArrayList<>();
       List<String> regexes = new ArrayList<>();
+      List<String> regexKeys = new ArrayList<>();
+      Charset charset = run != null ? run.getCharset() : Charset.defaultCharset();
 
-      // global passwords
-      List<MaskPasswordsBuildWrapper.VarPasswordPair> globalVarPasswordPairs = config.getGlobalVarPasswordPairs();
-      for(MaskPasswordsBuildWrapper.VarPasswordPair globalVarPasswordPair: globalVarPasswordPairs) {
-          passwords.add(globalVarPasswordPair.getPlainTextPassword());
+      // global passwords, compiled once for all the builds
+      LiteralMatcher passwordsMatcher = config.getGlobalPasswordsMatcher(charset);
+      if (passwordsMatcher == null) {
+        passwords.addAll(config.getGlobalPasswords());
       }
 
       // global regexes
       List<MaskPasswordsConfig.VarMaskRegexEntry> globalVarMaskRegexes = config.getGlobalVarMaskRegexesU();
       for(MaskPasswordsConfig.VarMaskRegexEntry globalVarMaskRegex: globalVarMaskRegexes) {
           regexes.add(globalVarMaskRegex.getValue());
+          regexKeys.add(globalVarMaskRegex.getKey());
       }
-      return new MaskPasswordsOutputStream(logger, passwords, regexes);
+      return new MaskPasswordsOutputStream(logger, passwordsMatcher, passwords, regexes, "", charset)
+              .withStatisticsFor(run != null ? run.getExternalizableId() : null)
+              .withRegexKeys(regexKeys);
   }
 
   private static final Logger LOGGER = Logger.getLogger(MaskPasswordsConsoleLogFilter.class.getName());
@@ -25,33 +25,235 @@
 
 package com.michelin.cio.hudson.plugins.maskpasswords;
 
+import com.michelin.cio.hudson.plugins.maskpasswords.LineMasker.MaskedLine;
+import com.michelin.cio.hudson.plugins.util.AhoCorasickLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.BinaryDetector;
+import com.michelin.cio.hudson.plugins.util.BloomFilterLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.LatencyHistogram;
+import com.michelin.cio.hudson.plugins.util.LayeredLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.LineCache;
+import com.michelin.cio.hudson.plugins.util.LineDecoder;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil;
+import com.michelin.cio.hudson.plugins.util.MultiLineHold;
+import com.michelin.cio.hudson.plugins.util.MultiLineLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.PatternProfiler;
+import com.michelin.cio.hudson.plugins.util.RollingHashLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.SwarByteScanner;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.console.ConsoleNote;
 import hudson.console.LineTransformationOutputStream;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import static com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil.secretsMaskPatterns;
-
-//TODO: UTF-8 hardcoding is not a perfect solution
 /**
  * Custom output stream which masks a predefined set of passwords.
  *
+ * <p>Lines are decoded with the charset of the run, which the passwords are
+ * encoded into for the literal engines to match the bytes as they are.</p>
+ *
+ * <p>The streams are tuned by the static fields in capitals, read from the
+ * system properties named after this class and each field, camel-cased:
+ * {@code com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.preserveLength}
+ * for instance. All but {@link #LITERAL_ENGINE} can be changed from the
+ * script console, for the streams opened afterwards.</p>
+ *
  * @author Romain Seguy (http://openromain.blogspot.com)
  */
+@SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "The tuning knobs are changed from the script console")
 public class MaskPasswordsOutputStream extends LineTransformationOutputStream {
 
+    /**
+     * Engines available to match the passwords (as opposed to the regexes).
+     */
+    public enum LiteralEngine {
+        /**
+         * All passwords aggregated into a single alternation regex.
+         */
+        REGEX,
+        /**
+         * Aho-Corasick automaton over bytes laid out in primitive arrays, see
+         * {@link AhoCorasickLiteralMatcher}: each line is scanned once,
+         * whatever the number of passwords.
+         */
+        TRIE,
+        /**
+         * Length-bucketed rolling hashes confirmed by fingerprints, see
+         * {@link RollingHashLiteralMatcher}: the passwords are not kept in
+         * memory once the matcher is built.
+         */
+        HASH,
+        /**
+         * Like {@link #HASH}, with a compact Bloom filter in front of the
+         * exact set, see {@link BloomFilterLiteralMatcher}: meant for tens of
+         * thousands of passwords.
+         */
+        BLOOM
+    }
+
+    /**
+     * How the lines of binary output are masked, see {@link BinaryDetector}.
+     */
+    public enum BinaryPolicy {
+        /**
+         * Like lines of text, decoded and matched against the regexes: the
+         * default.
+         */
+        TEXT,
+        /**
+         * Only the passwords are masked, matched against the bytes: binary
+         * output is neither decoded nor matched against the regexes, so that
+         * what the regexes would have masked there shows.
+         */
+        LITERAL,
+        /**
+         * Replaced with {@link #REDACTED}, once for consecutive lines, or
+         * with {@code *}s when {@linkplain #PRESERVE_LENGTH preserving the
+         * length}.
+         */
+        REDACT,
+        /**
+         * Left out of the console.
+         */
+        SKIP
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MaskPasswordsOutputStream.class.getName());
+
+    /**
+     * Engine used to match the passwords, read once.
+     */
+    static final LiteralEngine LITERAL_ENGINE = literalEngine(
+            SystemProperties.getString(MaskPasswordsOutputStream.class.getName() + ".literalEngine"));
+
+    /**
+     * How the lines of binary output are masked.
+     */
+    static BinaryPolicy BINARY_POLICY = binaryPolicy(
+            SystemProperties.getString(MaskPasswordsOutputStream.class.getName() + ".binaryPolicy"));
+
+    /** What {@link BinaryPolicy#REDACT} replaces binary output with. */
+    static final String REDACTED = "[binary output masked]";
+
+    /**
+     * Number of distinct lines each stream remembers the masking of, so that
+     * repeated lines are not matched again; 0 to disable.
+     */
+    public static int LINE_CACHE_SIZE = Math.max(0,
+            SystemProperties.getInteger(MaskPasswordsOutputStream.class.getName() + ".lineCacheSize", 0));
+
+    /**
+     * When more than 0, the beginning of a line which has no end yet, such
+     * as progress dots or a prompt, is masked and written out on
+     * {@link #flush} and after this many milliseconds without output,
+     * rather than when the line ends. What a password or a regex match could
+     * still span is held back.
+     */
+    public static long PARTIAL_LINE_MILLIS = Math.max(0,
+            SystemProperties.getLong(MaskPasswordsOutputStream.class.getName() + ".partialLineMillis", 0L));
+
+    /**
+     * Whether to replace each byte of a secret with a {@code *}, in place,
+     * rather than the whole secret with {@link MaskPasswordsUtil#MASKED_STRING},
+     * so that the offsets of the console (of its annotations, for instance)
+     * do not change.
+     */
+    public static boolean PRESERVE_LENGTH =
+            SystemProperties.getBoolean(MaskPasswordsOutputStream.class.getName() + ".preserveLength");
+
+    /**
+     * Whether to match the passwords and the regexes against the visible
+     * text of the lines with ANSI escape sequences, such as colors, so that
+     * a secret split by a color change is found.
+     */
+    public static boolean ANSI_AWARE =
+            SystemProperties.getBoolean(MaskPasswordsOutputStream.class.getName() + ".ansiAware");
+
+    /**
+     * Whether to leave the {@link ConsoleNote}s of the lines (hyperlinks,
+     * for instance) as they are, and mask only the text around them.
+     */
+    public static boolean NOTE_AWARE =
+            SystemProperties.getBoolean(MaskPasswordsOutputStream.class.getName() + ".noteAware");
+
+    /**
+     * Whether to mask and write a line up to each carriage return, so that
+     * progress bars do not pile up to be masked at once.
+     */
+    public static boolean SEGMENT_CARRIAGE_RETURNS =
+            SystemProperties.getBoolean(MaskPasswordsOutputStream.class.getName() + ".segmentCarriageReturns");
+
+    /**
+     * Whether to time the masking of each line, for the masking time of the
+     * build statistics and the percentiles of {@link MaskingMetrics}.
+     */
+    public static boolean TIME_LINES =
+            SystemProperties.getBoolean(MaskPasswordsOutputStream.class.getName() + ".timeLines");
+
     private final OutputStream logger;
-    private final List<Pattern> passwordsAsPatterns;
+    /** Of the console: see {@link Run#getCharset}. */
+    private final Charset charset;
+    private final LineDecoder decoder;
+    /** Masks each line as the options of this stream say. */
+    private final LineMasker masker;
+    /** Tells how much of a partial line can be written, see {@link #writePartialLine}. */
+    private final LineSettler settler;
+    /** Holds back the lines in which a multi-line password may have started. */
+    @CheckForNull
+    private final MultiLineHold multiLineHold;
+    /** Where {@link #multiLineHold} releases the lines to. */
+    private final MultiLineHold.Sink released = this::maskAndWrite;
+    @CheckForNull
+    private final LineCache<MaskedLine> lineCache;
     private final String runName;
+    /** The current line, up to {@link #count}. */
+    private byte[] buf = new byte[256];
+    private int count;
+    /**
+     * What was held back of the current line by the last partial write: the
+     * next one on a carriage return waits for the line to double.
+     */
+    private int heldBack;
+    /** The tuning knobs, as they were when this stream was opened. */
+    private final StreamOptions options;
+    /**
+     * Whether the last byte written is a carriage return, which ends a
+     * segment unless the next byte is a newline.
+     */
+    private boolean pendingCarriageReturn;
+    private long lastWrite;
+    @CheckForNull
+    private Future<?> idleFlush;
+    /** Not yet reported statistics. */
+    private final MaskingStatistics statistics = new MaskingStatistics();
+    /** Not yet reported time spent on each line. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private boolean closed;
+    @CheckForNull
+    private String statisticsRunId;
+    @CheckForNull
+    private MaskingStatisticsAction statisticsAction;
+    /** Told what the lines are masked for, for a {@link MaskingDryRun} only. */
+    @CheckForNull
+    private final MatchListener listener;
 
     /**
      * @param logger The output stream to which this {@link MaskPasswordsOutputStream}
@@ -61,42 +263,96 @@ public class MaskPasswordsOutputStream extends LineTransformationOutputStream {
      * @param runName A string representation of the Run/Build the output stream logger is associated with. Used for logging purposes.
      */
     public MaskPasswordsOutputStream(OutputStream logger, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, String runName) {
+        this(logger, passwords, regexes, runName, Charset.defaultCharset());
+    }
+
+    /**
+     * @param logger The output stream to which this {@link MaskPasswordsOutputStream}
+     *               will write to
+     * @param passwords A collection of {@link String}s to be masked
+     * @param regexes A collection of Regular Expression {@link String}s to be masked
+     * @param runName A string representation of the Run/Build the output stream logger is associated with. Used for logging purposes.
+     * @param charset The charset of the console, see {@link Run#getCharset}
+     */
+    public MaskPasswordsOutputStream(OutputStream logger, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, String runName, Charset charset) {
+        this(logger, compileLiterals(passwords, charset), LITERAL_ENGINE == LiteralEngine.REGEX ? passwords : null, regexes, runName, charset);
+    }
+
+    /**
+     * @param logger The output stream to which this {@link MaskPasswordsOutputStream}
+     *               will write to
+     * @param passwordsMatcher Passwords to be masked, as compiled by {@link #compileLiterals}
+     * @param passwords A collection of {@link String}s to be masked, in addition to {@code passwordsMatcher}
+     * @param regexes A collection of Regular Expression {@link String}s to be masked
+     * @param runName A string representation of the Run/Build the output stream logger is associated with. Used for logging purposes.
+     */
+    public MaskPasswordsOutputStream(OutputStream logger, @CheckForNull LiteralMatcher passwordsMatcher, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, String runName) {
+        this(logger, passwordsMatcher, passwords, regexes, runName, Charset.defaultCharset());
+    }
+
+    /**
+     * @param logger The output stream to which this {@link MaskPasswordsOutputStream}
+     *               will write to
+     * @param passwordsMatcher Passwords to be masked, as compiled by {@link #compileLiterals(Collection, Charset)}
+     *                         with the same charset
+     * @param passwords A collection of {@link String}s to be masked, in addition to {@code passwordsMatcher}
+     * @param regexes A collection of Regular Expression {@link String}s to be masked
+     * @param runName A string representation of the Run/Build the output stream logger is associated with. Used for logging purposes.
+     * @param charset The charset of the console, see {@link Run#getCharset}
+     */
+    public MaskPasswordsOutputStream(OutputStream logger, @CheckForNull LiteralMatcher passwordsMatcher, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, String runName, Charset charset) {
+        this(logger, passwordsMatcher, passwords, regexes, runName, charset, null);
+    }
+
+    /**
+     * A stream for a {@link MaskingDryRun}: lines are masked as for a build,
+     * but neither cached nor written in part, and neither the stream nor what
+     * it compiles are shared, nor accounted for in {@link MaskingMetrics} and
+     * JFR events.
+     *
+     * @param listener told what each line is masked for
+     */
+    MaskPasswordsOutputStream(OutputStream logger, LiteralEngine engine, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, Charset charset, MatchListener listener) {
+        this(logger, engine == LiteralEngine.REGEX ? null : compile(engine, passwords, charset, false),
+                engine == LiteralEngine.REGEX ? passwords : null, regexes, "dry run", charset, listener);
+    }
+
+    private MaskPasswordsOutputStream(OutputStream logger, @CheckForNull LiteralMatcher passwordsMatcher, @CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, String runName, Charset charset, @CheckForNull MatchListener listener) {
+        MaskingEvents.Compilation event = new MaskingEvents.Compilation();
+        event.begin();
         this.logger = logger;
         this.runName = (runName != null) ? runName : "";
-        passwordsAsPatterns = new ArrayList<>();
-
-        if (passwords != null) {
-            // Passwords aggregated into single regex which is compiled as a pattern for efficiency
-            StringBuilder pwRegex = new StringBuilder().append('(');
-            int pwCount = 0;
-            for (String pw : passwords) {
-                if (StringUtils.isNotEmpty(pw)) {
-                    pwCount++;
-                    pwRegex.append(Pattern.quote(pw));
-                    pwRegex.append('|');
-                    try {
-                        String encodedPassword = URLEncoder.encode(pw, "UTF-8");
-                        if (!encodedPassword.equals(pw)) {
-                            pwRegex.append(Pattern.quote(encodedPassword));
-                            pwRegex.append('|');
-                        }
-                    } catch (UnsupportedEncodingException e) {
-                        // ignore any encoding problem => status quo
-                    }
-                }
-            }
-            if (pwCount > 0) {
-                pwRegex.deleteCharAt(pwRegex.length()-1); // removes the last unuseful pipe
-                pwRegex.append(')');
-                passwordsAsPatterns.add(Pattern.compile(pwRegex.toString()));
-            }
-        }
-        if (regexes != null) {
-            for (String r: regexes) {
-                passwordsAsPatterns.add(Pattern.compile(r));
-            }
+        this.charset = charset;
+        this.decoder = new LineDecoder(charset);
+        AhoCorasickLiteralMatcher multiLine = null;
+        if (passwordsMatcher instanceof MultiLineLiteralMatcher) {
+            multiLine = ((MultiLineLiteralMatcher) passwordsMatcher).getMultiLine();
+            passwordsMatcher = ((MultiLineLiteralMatcher) passwordsMatcher).getSingleLine();
         }
+        this.listener = listener;
+        this.options = listener == null ? StreamOptions.current() : StreamOptions.forDryRun();
+        this.lineCache = options.lineCacheSize > 0 ? new LineCache<>(options.lineCacheSize) : null;
 
+        SharedMatchers.Patterns patterns = listener == null ? SharedMatchers.patterns(passwords, regexes, charset)
+                : new SharedMatchers.Patterns(passwords, regexes, charset);
+        if (multiLine == null) {
+            multiLine = patterns.multiLineMatcher;
+        }
+        this.multiLineHold = multiLine != null ? new MultiLineHold(multiLine, options.preserveLength) : null;
+        this.masker = new LineMasker(decoder, this.runName, passwordsMatcher, patterns, options, listener);
+        this.settler = new LineSettler(decoder, passwordsMatcher, patterns.settlingPatterns, options.ansiAware);
+        if (listener == null) {
+            MaskingMetrics.get().streamOpened();
+        }
+        event.end();
+        if (listener == null && event.shouldCommit()) {
+            // the passwords matcher, if any, is reported by compileLiterals
+            event.engine = LiteralEngine.REGEX.name();
+            event.secrets = patterns.secrets;
+            event.regexes = patterns.regexesAsPatterns.size();
+            event.runName = this.runName;
+            event.commit();
+        }
     }
 
     /**
@@ -112,15 +368,495 @@ public class MaskPasswordsOutputStream extends LineTransformationOutputStream {
         this(logger, passwords, regexes, "");
     }
 
-    // TODO: The logic relies on the default encoding, which may cause issues when master and agent have different encodings
-    @SuppressFBWarnings(value = "DM_DEFAULT_ENCODING", justification = "Open TODO item for wider rework")
+    /**
+     * Compiles the given passwords, and their URL-encoded forms, with the
+     * configured {@link LiteralEngine}. The passwords spanning several lines
+     * are compiled apart, see {@link MultiLineLiteralMatcher}.
+     *
+     * @return {@code null} if the passwords are to be matched as a regex
+     */
+    @CheckForNull
+    public static LiteralMatcher compileLiterals(@CheckForNull Collection<String> passwords) {
+        return compileLiterals(passwords, Charset.defaultCharset());
+    }
+
+    /**
+     * Like {@link #compileLiterals(Collection)}, for a console in the given
+     * charset.
+     */
+    @CheckForNull
+    public static LiteralMatcher compileLiterals(@CheckForNull Collection<String> passwords, Charset charset) {
+        return compileLiterals(LITERAL_ENGINE, passwords, charset);
+    }
+
+    @CheckForNull
+    static LiteralMatcher compileLiterals(LiteralEngine engine, @CheckForNull Collection<String> passwords) {
+        return compileLiterals(engine, passwords, Charset.defaultCharset());
+    }
+
+    @CheckForNull
+    static LiteralMatcher compileLiterals(LiteralEngine engine, @CheckForNull Collection<String> passwords, Charset charset) {
+        if (engine == LiteralEngine.REGEX) {
+            return null;
+        }
+        return SharedMatchers.literals(engine.name(), passwords, charset, () -> compile(engine, passwords, charset));
+    }
+
+    /**
+     * Like {@link #compileLiterals(Collection, Charset)}, without looking the
+     * passwords up in {@link SharedMatchers} nor keeping them there: for the
+     * ones the caller keeps compiled already, which would otherwise be
+     * fingerprinted, and counted as a lookup, once more.
+     */
+    @CheckForNull
+    static LiteralMatcher compileLiteralsUnshared(@CheckForNull Collection<String> passwords, Charset charset) {
+        return LITERAL_ENGINE == LiteralEngine.REGEX ? null : compile(LITERAL_ENGINE, passwords, charset);
+    }
+
+    /**
+     * Like {@link #compileLiterals(Collection, Charset)}, adding the given
+     * passwords to {@code base}, compiled already for the same charset: only
+     * the former are compiled, see {@link LayeredLiteralMatcher}.
+     *
+     * @return {@code null} if the passwords are to be matched as a regex, or
+     *         if both have passwords spanning several lines, which are then
+     *         to be compiled together
+     */
+    @CheckForNull
+    public static LiteralMatcher compileLiterals(LiteralMatcher base, @CheckForNull Collection<String> passwords, Charset charset) {
+        return compileLiterals(LITERAL_ENGINE, base, passwords, charset);
+    }
+
+    @CheckForNull
+    static LiteralMatcher compileLiterals(LiteralEngine engine, LiteralMatcher base, @CheckForNull Collection<String> passwords, Charset charset) {
+        if (passwords == null || passwords.isEmpty()) {
+            return base;
+        }
+        LiteralMatcher delta = compileLiterals(engine, passwords, charset);
+        if (delta == null) {
+            return null;
+        }
+        AhoCorasickLiteralMatcher multiLine = null;
+        if (base instanceof MultiLineLiteralMatcher) {
+            multiLine = ((MultiLineLiteralMatcher) base).getMultiLine();
+            base = ((MultiLineLiteralMatcher) base).getSingleLine();
+        }
+        if (delta instanceof MultiLineLiteralMatcher) {
+            if (multiLine != null) {
+                return null;
+            }
+            multiLine = ((MultiLineLiteralMatcher) delta).getMultiLine();
+            delta = ((MultiLineLiteralMatcher) delta).getSingleLine();
+        }
+        LiteralMatcher layered = new LayeredLiteralMatcher(base, delta);
+        return multiLine != null ? new MultiLineLiteralMatcher(layered, multiLine) : layered;
+    }
+
+    private static LiteralMatcher compile(LiteralEngine engine, @CheckForNull Collection<String> passwords, Charset charset) {
+        return compile(engine, passwords, charset, true);
+    }
+
+    /**
+     * @param accounted whether to report the compilation to {@link MaskingMetrics} and JFR
+     */
+    private static LiteralMatcher compile(LiteralEngine engine, @CheckForNull Collection<String> passwords, Charset charset, boolean accounted) {
+        MaskingEvents.Compilation event = new MaskingEvents.Compilation();
+        event.begin();
+        long start = System.nanoTime();
+        Set<String> variants = MaskPasswordsUtil.withUrlEncodedVariants(passwords);
+        List<byte[]> multiLine = removeMultiLine(variants, charset);
+        List<byte[]> literals = new ArrayList<>();
+        for (String literal : variants) {
+            literals.add(literal.getBytes(charset));
+        }
+        LiteralMatcher matcher = compile(engine, literals);
+        if (!multiLine.isEmpty()) {
+            matcher = new MultiLineLiteralMatcher(matcher, AhoCorasickLiteralMatcher.compile(multiLine));
+        }
+        if (!accounted) {
+            return matcher;
+        }
+        MaskingMetrics.get().compiled(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = engine.name();
+            event.secrets = literals.size() + multiLine.size();
+            event.commit();
+        }
+        return matcher;
+    }
+
+    /**
+     * Compiles the given single-line literals, as they are, with the given
+     * engine.
+     */
+    static LiteralMatcher compile(LiteralEngine engine, List<byte[]> literals) {
+        switch (engine) {
+            case HASH:
+                return RollingHashLiteralMatcher.compile(literals);
+            case BLOOM:
+                return BloomFilterLiteralMatcher.compile(literals);
+            default:
+                return AhoCorasickLiteralMatcher.compile(literals);
+        }
+    }
+
+    /**
+     * Removes the passwords spanning several lines from the given ones, and
+     * returns them, with their CRLF forms as they may be written on Windows.
+     */
+    static List<byte[]> removeMultiLine(Set<String> literals, Charset charset) {
+        List<byte[]> multiLine = new ArrayList<>();
+        for (Iterator<String> it = literals.iterator(); it.hasNext(); ) {
+            String literal = it.next();
+            if (literal.indexOf('\n') >= 0) {
+                it.remove();
+                multiLine.add(literal.getBytes(charset));
+                if (literal.indexOf('\r') < 0) {
+                    multiLine.add(literal.replace("\n", "\r\n").getBytes(charset));
+                }
+            }
+        }
+        return multiLine;
+    }
+
+    @CheckForNull
+    static SwarByteScanner firstBytes(Set<String> literals, Charset charset) {
+        boolean[] first = new boolean[256];
+        for (String literal : literals) {
+            byte[] b = literal.getBytes(charset);
+            if (b.length > 0) {
+                first[b[0] & 0xFF] = true;
+            }
+        }
+        return SwarByteScanner.of(first);
+    }
+
+    static LiteralEngine literalEngine(@CheckForNull String name) {
+        if (StringUtils.isBlank(name)) {
+            return LiteralEngine.REGEX;
+        }
+        try {
+            return LiteralEngine.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Unknown Mask Passwords literal engine {0}, using {1}", new Object[] {name, LiteralEngine.REGEX});
+            return LiteralEngine.REGEX;
+        }
+    }
+
+    static BinaryPolicy binaryPolicy(@CheckForNull String name) {
+        if (StringUtils.isBlank(name)) {
+            return BinaryPolicy.TEXT;
+        }
+        try {
+            return BinaryPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Unknown Mask Passwords binary policy {0}, using {1}", new Object[] {name, BinaryPolicy.TEXT});
+            return BinaryPolicy.TEXT;
+        }
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (pendingCarriageReturn) {
+            pendingCarriageReturn = false;
+            if (b != '\n') {
+                carriageReturn();
+            }
+        }
+        append(b);
+        if (b == '\n') {
+            endLine();
+        } else if (b == '\r' && options.segmentCarriageReturns) {
+            pendingCarriageReturn = true;
+        } else if (options.partialLineNanos > 0) {
+            scheduleIdleFlush();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        if (pendingCarriageReturn && off < end) {
+            pendingCarriageReturn = false;
+            if (b[off] != '\n') {
+                carriageReturn();
+            }
+        }
+        while (off < end) {
+            int eol = off;
+            while (eol < end && b[eol] != '\n' && (b[eol] != '\r' || !options.segmentCarriageReturns)) {
+                eol++;
+            }
+            if (eol == end) {
+                append(b, off, end - off);
+                break;
+            }
+            append(b, off, eol + 1 - off);
+            if (b[eol] == '\n') {
+                endLine();
+            } else if (eol + 1 == end) {
+                // a CRLF may be split between two writes
+                pendingCarriageReturn = true;
+            } else if (b[eol + 1] != '\n') {
+                carriageReturn();
+            }
+            off = eol + 1;
+        }
+        if (count > 0 && options.partialLineNanos > 0) {
+            scheduleIdleFlush();
+        }
+    }
+
+    /**
+     * Masks and writes what was written since the last end of line, if anything.
+     */
+    @Override
+    public synchronized void forceEol() throws IOException {
+        if (count > 0) {
+            endLine();
+        }
+        if (multiLineHold != null) {
+            multiLineHold.releaseAll(released);
+        }
+    }
+
+    private void append(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    private void append(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+
+    private void endLine() throws IOException {
+        statistics.buffer(buf.length);
+        eol(buf, count);
+        count = 0;
+        heldBack = 0;
+        settler.reset();
+        pendingCarriageReturn = false;
+        if (buf.length > 4096) {
+            // do not keep the buffer of an exceptionally long line
+            buf = new byte[256];
+        }
+    }
+
+    /**
+     * Masks and writes the current line up to a carriage return, see
+     * {@link #SEGMENT_CARRIAGE_RETURNS}. What a secret could span is carried
+     * over to the next segment.
+     */
+    private void carriageReturn() throws IOException {
+        if (count >= 2 * heldBack) {
+            writePartialLine();
+        }
+    }
+
+    private void scheduleIdleFlush() {
+        lastWrite = System.nanoTime();
+        if (idleFlush == null) {
+            idleFlush = Timer.get().schedule(this::flushIfIdle, options.partialLineNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void flushIfIdle() {
+        idleFlush = null;
+        if (closed || count == 0) {
+            return;
+        }
+        long idle = System.nanoTime() - lastWrite;
+        if (idle < options.partialLineNanos) {
+            idleFlush = Timer.get().schedule(this::flushIfIdle, options.partialLineNanos - idle, TimeUnit.NANOSECONDS);
+            return;
+        }
+        try {
+            writePartialLine();
+            logger.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to write the partial line of " + runName, e);
+        }
+    }
+
+    /**
+     * Masks and writes the beginning of the current line, as far as the
+     * rest of it cannot change how it is masked.
+     */
+    private void writePartialLine() throws IOException {
+        int settled = settler.settledLength(buf, count);
+        if (settled > 0) {
+            write(buf, settled, false);
+            System.arraycopy(buf, settled, buf, 0, count - settled);
+            count -= settled;
+            settler.written(settled);
+        }
+        heldBack = count;
+    }
+
     @Override
     protected void eol(byte[] bytes, int len) throws IOException {
-        String line = new String(bytes, 0, len);
-        if(passwordsAsPatterns != null && line != null) {
-            line = secretsMaskPatterns(passwordsAsPatterns, line, runName);
+        write(bytes, len, true);
+    }
+
+    /**
+     * @param endOfLine {@code false} for the beginning of a line, see {@link #PARTIAL_LINE_MILLIS}
+     */
+    private void write(byte[] bytes, int len, boolean endOfLine) throws IOException {
+        if (multiLineHold != null) {
+            multiLineHold.hold(bytes, len, endOfLine, released);
+        } else {
+            maskAndWrite(bytes, len, endOfLine, false, 0);
         }
-        logger.write(line.getBytes());
+    }
+
+    private void maskAndWrite(byte[] line, boolean endOfLine, boolean premasked, int multiLineMatches) throws IOException {
+        maskAndWrite(line, line.length, endOfLine, premasked, multiLineMatches);
+    }
+
+    /**
+     * @param endOfLine {@code false} for the beginning of a line, see {@link #PARTIAL_LINE_MILLIS}
+     * @param premasked whether parts of multi-line passwords were masked already
+     * @param multiLineMatches number of multi-line passwords which ended in the line
+     */
+    private void maskAndWrite(byte[] bytes, int len, boolean endOfLine, boolean premasked, int multiLineMatches) throws IOException {
+        MaskingEvents.SlowLine event = null;
+        if (listener == null && MaskingEvents.SLOW_LINE.isEnabled()) {
+            event = new MaskingEvents.SlowLine();
+            event.begin();
+        }
+        long start = options.timeLines ? System.nanoTime() : 0;
+        boolean binary = options.binaryPolicy != BinaryPolicy.TEXT && BinaryDetector.isBinary(bytes, 0, len, decoder.isUtf8());
+        boolean cacheable = lineCache != null && endOfLine && !premasked && !binary && len <= LineCache.MAX_LINE_LENGTH;
+        MaskedLine cached = cacheable ? lineCache.get(bytes, 0, len) : null;
+        // masking in place changes the line
+        byte[] key = cacheable && cached == null && options.preserveLength ? Arrays.copyOf(bytes, len) : bytes;
+        MaskedLine result;
+        if (binary) {
+            statistics.binaryLine();
+            result = masker.maskBinary(bytes, len, premasked, multiLineMatches);
+        } else {
+            masker.textLine();
+            result = cached != null ? cached : masker.mask(bytes, len, premasked, multiLineMatches);
+        }
+        if (cacheable) {
+            statistics.lineCacheLookup(cached != null);
+            if (cached == null) {
+                lineCache.put(key, 0, len, result.output == null && result.masked
+                        ? new MaskedLine(Arrays.copyOf(bytes, len), true, result.literalMatches, result.regexMatches) : result);
+            }
+        }
+        if (cached != null && cached.masked) {
+            MaskPasswordsUtil.logMaskedLine(runName, new String(cached.output, charset));
+        }
+        long nanos = options.timeLines ? System.nanoTime() - start : 0;
+        if (endOfLine) {
+            statistics.line(len, result.masked, result.literalMatches, result.regexMatches, nanos);
+        } else {
+            statistics.partialLine(len, result.masked, result.literalMatches, result.regexMatches, nanos);
+        }
+        if (options.timeLines) {
+            latencies.record(nanos);
+        }
+        if (event != null) {
+            event.end();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.length = len;
+            event.literalMatches = result.literalMatches;
+            event.regexMatches = result.regexMatches;
+            event.runName = runName;
+            event.commit();
+        }
+        if (result.output != null) {
+            logger.write(result.output);
+        } else {
+            logger.write(bytes, 0, len);
+        }
+        if (endOfLine && listener != null) {
+            listener.endOfLine();
+        }
+    }
+
+    /**
+     * Told what each line is masked for, by a stream for a {@link MaskingDryRun}.
+     */
+    interface MatchListener {
+
+        /**
+         * A password was found in the current line.
+         */
+        void password(String password);
+
+        /**
+         * The regex at the given index was matched against the current line.
+         *
+         * @param secrets what it matched, which is masked wherever it is in the line
+         */
+        void regex(int index, List<String> secrets, long nanos);
+
+        /**
+         * The current line was masked and written.
+         */
+        void endOfLine();
+    }
+
+    /**
+     * Reports the statistics of this stream to the given run, on each flush
+     * and when closed. Does nothing when not on the controller.
+     *
+     * @param runId {@link Run#getExternalizableId} of the run
+     * @return this stream
+     */
+    public MaskPasswordsOutputStream withStatisticsFor(@CheckForNull String runId) {
+        this.statisticsRunId = runId;
+        return this;
+    }
+
+    /**
+     * Names the regexes of this stream on the {@link PatternProfiler} page.
+     *
+     * @param keys the names of the regexes, in the order they were given,
+     *             {@code null} for the ones which have none
+     * @return this stream
+     */
+    public MaskPasswordsOutputStream withRegexKeys(@CheckForNull List<String> keys) {
+        masker.setRegexKeys(keys);
+        return this;
+    }
+
+    /**
+     * Returns the statistics of this stream which are not yet reported.
+     */
+    MaskingStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void reportStatistics() {
+        // a dry run is not accounted for
+        if (statistics.isEmpty() || listener != null) {
+            return;
+        }
+        MaskingMetrics.get().add(statistics, latencies);
+        latencies.clear();
+        if (statisticsRunId != null && statisticsAction == null) {
+            statisticsAction = MaskingStatisticsAction.of(statisticsRunId);
+            if (statisticsAction == null) {
+                statisticsRunId = null;
+            }
+        }
+        if (statisticsAction != null) {
+            statisticsAction.add(statistics);
+        }
+        statistics.clear();
     }
 
     /**
@@ -128,8 +864,19 @@ public class MaskPasswordsOutputStream extends LineTransformationOutputStream {
      * @throws IOException on error
      */
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         super.close();
+        if (idleFlush != null) {
+            idleFlush.cancel(false);
+            idleFlush = null;
+        }
+        reportStatistics();
+        if (!closed) {
+            closed = true;
+            if (listener == null) {
+                MaskingMetrics.get().streamClosed();
+            }
+        }
         logger.close();
     }
 
@@ -138,8 +885,12 @@ public class MaskPasswordsOutputStream extends LineTransformationOutputStream {
      * @throws IOException on error
      */
     @Override
-    public void flush() throws IOException {
+    public synchronized void flush() throws IOException {
         super.flush();
+        if (options.partialLineNanos > 0 && count > 0) {
+            writePartialLine();
+        }
+        reportStatistics();
         logger.flush();
     }
 }
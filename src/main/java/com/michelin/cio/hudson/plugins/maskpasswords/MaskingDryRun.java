@@ -0,0 +1,300 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.LiteralEngine;
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.MatchListener;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Masks a sample log with candidate passwords and regexes, so that the
+ * effect of a configuration change can be checked before builds use it.
+ *
+ * <p>The sample is masked by a {@link MaskPasswordsOutputStream}, exactly as
+ * for a build, which tells what it finds in each line: the spans and the cost
+ * of each regex are derived from it. The stream is not accounted for in the
+ * metrics of the builds.</p>
+ */
+public final class MaskingDryRun {
+
+    /** Beyond this, the spans found are counted but not listed. */
+    static final int MAX_SPANS = 10_000;
+    static final String PASSWORDS_SOURCE = "password";
+
+    private final LiteralEngine engine;
+    private final List<String> passwords;
+    private final List<String> regexes;
+    private final Charset charset;
+
+    /**
+     * @param charset the charset the sample is masked in, as the console of a build
+     */
+    MaskingDryRun(LiteralEngine engine, Collection<String> passwords, Collection<String> regexes, Charset charset) {
+        this.engine = engine;
+        this.passwords = new ArrayList<>(passwords);
+        this.regexes = new ArrayList<>(regexes);
+        this.charset = charset;
+    }
+
+    Result run(String log) throws IOException {
+        byte[] bytes = log.getBytes(charset);
+        Explanation explanation = new Explanation(log);
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 64);
+        MaskPasswordsOutputStream stream = new MaskPasswordsOutputStream(out, engine, passwords, regexes, charset, explanation);
+        long compileNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        stream.write(bytes);
+        stream.close();
+        long maskingNanos = System.nanoTime() - start;
+
+        Result result = new Result(out.toString(charset), bytes.length, compileNanos, maskingNanos);
+        explanation.explain(result);
+        return result;
+    }
+
+    /**
+     * Locates in each line of the sample what the stream found in it.
+     */
+    private final class Explanation implements MatchListener {
+
+        private final String[] lines;
+        private final List<PatternTiming> patterns = new ArrayList<>();
+        private final List<Span> spans = new ArrayList<>();
+        private int spanCount;
+        private int line;
+        private final Set<Span> found = new LinkedHashSet<>();
+
+        Explanation(String log) {
+            lines = log.split("\n", -1);
+            for (String regex : regexes) {
+                patterns.add(new PatternTiming(regex));
+            }
+        }
+
+        @Override
+        public void password(String password) {
+            locate(password, PASSWORDS_SOURCE);
+        }
+
+        @Override
+        public void regex(int index, List<String> secrets, long nanos) {
+            PatternTiming timing = patterns.get(index);
+            timing.nanos += nanos;
+            timing.matches += secrets.size();
+            // every occurrence of a secret is masked, not only the ones the regex matched
+            for (String secret : secrets) {
+                locate(secret, timing.pattern);
+            }
+        }
+
+        private void locate(String secret, String source) {
+            String text = line < lines.length ? lines[line] : "";
+            for (int i = secret.isEmpty() ? -1 : text.indexOf(secret); i >= 0; i = text.indexOf(secret, i + 1)) {
+                found.add(new Span(line + 1, i, i + secret.length(), source));
+            }
+        }
+
+        @Override
+        public void endOfLine() {
+            for (Span span : found) {
+                spanCount++;
+                if (spans.size() < MAX_SPANS) {
+                    spans.add(span);
+                }
+            }
+            found.clear();
+            line++;
+        }
+
+        void explain(Result result) {
+            result.lines = line;
+            result.spans.addAll(spans);
+            result.spanCount = spanCount;
+            result.patterns.addAll(patterns);
+        }
+    }
+
+    /**
+     * A part of the sample which gets masked, in characters from the start
+     * of its line.
+     */
+    public static final class Span {
+
+        private final int line;
+        private final int start;
+        private final int end;
+        private final String source;
+
+        Span(int line, int start, int end, String source) {
+            this.line = line;
+            this.start = start;
+            this.end = end;
+            this.source = source;
+        }
+
+        /**
+         * Line number, from 1.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * {@value MaskingDryRun#PASSWORDS_SOURCE}, or the regex which matched.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Span)) {
+                return false;
+            }
+            Span other = (Span) o;
+            return line == other.line && start == other.start && end == other.end && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((line * 31 + start) * 31 + end) * 31 + source.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return line + ":[" + start + "," + end + ") " + source;
+        }
+    }
+
+    public static final class PatternTiming {
+
+        private final String pattern;
+        private long nanos;
+        private int matches;
+
+        PatternTiming(String pattern) {
+            this.pattern = pattern;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getMatches() {
+            return matches;
+        }
+    }
+
+    public static final class Result {
+
+        private final String masked;
+        private final long bytes;
+        private final long compileNanos;
+        private final long maskingNanos;
+        private final List<Span> spans = new ArrayList<>();
+        private final List<PatternTiming> patterns = new ArrayList<>();
+        private int spanCount;
+        private int lines;
+
+        Result(String masked, long bytes, long compileNanos, long maskingNanos) {
+            this.masked = masked;
+            this.bytes = bytes;
+            this.compileNanos = compileNanos;
+            this.maskingNanos = maskingNanos;
+        }
+
+        public String getMasked() {
+            return masked;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getLines() {
+            return lines;
+        }
+
+        public long getCompileNanos() {
+            return compileNanos;
+        }
+
+        public long getMaskingNanos() {
+            return maskingNanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return bytes * 1000.0 / Math.max(1, maskingNanos);
+        }
+
+        /**
+         * The first {@link #MAX_SPANS} spans.
+         */
+        public List<Span> getSpans() {
+            return spans;
+        }
+
+        public int getSpanCount() {
+            return spanCount;
+        }
+
+        /**
+         * The cost of each regex, in the order given.
+         */
+        public List<PatternTiming> getPatterns() {
+            return patterns;
+        }
+
+        public JSONObject toJSON() {
+            JSONArray spans = new JSONArray();
+            for (Span span : this.spans) {
+                spans.element(new JSONObject()
+                        .element("line", span.getLine())
+                        .element("start", span.getStart())
+                        .element("end", span.getEnd())
+                        .element("source", span.getSource()));
+            }
+            JSONArray patterns = new JSONArray();
+            for (PatternTiming timing : this.patterns) {
+                patterns.element(new JSONObject()
+                        .element("pattern", timing.getPattern())
+                        .element("nanos", timing.getNanos())
+                        .element("matches", timing.getMatches()));
+            }
+            return new JSONObject()
+                    .element("masked", masked)
+                    .element("bytes", bytes)
+                    .element("lines", lines)
+                    .element("compileNanos", compileNanos)
+                    .element("maskingNanos", maskingNanos)
+                    .element("megabytesPerSecond", getMegabytesPerSecond())
+                    .element("spanCount", spanCount)
+                    .element("spans", spans)
+                    .element("patterns", patterns);
+        }
+    }
+
+}
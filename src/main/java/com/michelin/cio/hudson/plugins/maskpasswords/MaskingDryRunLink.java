@@ -0,0 +1,159 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.LiteralEngine;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
+import org.jvnet.localizer.ResourceBundleHolder;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * "Masking dry run" page, and its {@code runJson} REST counterpart: masks a
+ * sample log with candidate passwords and regexes, optionally on top of the
+ * global ones, and reports what got masked and what it cost.
+ *
+ * <p>For instance:</p>
+ * <pre>
+ * curl -u admin:token --data-urlencode log@build.log --data-urlencode 'regexes=token=(\w+)' \
+ *     https://jenkins/manage/maskPasswordsDryRun/runJson
+ * </pre>
+ */
+@Extension
+public class MaskingDryRunLink extends ManagementLink {
+
+    /** Larger samples are refused, as they are processed in memory. */
+    static final int MAX_SAMPLE_LENGTH = 16 * 1024 * 1024;
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-terminal";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return ResourceBundleHolder.get(MaskingDryRunLink.class).format("DisplayName");
+    }
+
+    @Override
+    public String getDescription() {
+        return ResourceBundleHolder.get(MaskingDryRunLink.class).format("Description");
+    }
+
+    @Override
+    public String getUrlName() {
+        return "maskPasswordsDryRun";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.TOOLS;
+    }
+
+    public LiteralEngine[] getEngines() {
+        return LiteralEngine.values();
+    }
+
+    public LiteralEngine getDefaultEngine() {
+        return MaskPasswordsOutputStream.LITERAL_ENGINE;
+    }
+
+    /**
+     * Masks the sample and shows the result.
+     */
+    @RequirePOST
+    public HttpResponse doRun(@QueryParameter String log, @QueryParameter String passwords, @QueryParameter String regexes,
+                              @QueryParameter String engine, @QueryParameter boolean global) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        MaskingDryRun dryRun;
+        try {
+            dryRun = dryRun(log, passwords, regexes, engine, global);
+        } catch (IllegalArgumentException e) {
+            return HttpResponses.errorWithoutStack(400, e.getMessage());
+        }
+        return HttpResponses.forwardToView(this, "result.jelly").with("result", dryRun.run(StringUtils.defaultString(log)));
+    }
+
+    /**
+     * Masks the sample and returns the result as JSON.
+     */
+    @RequirePOST
+    public HttpResponse doRunJson(@QueryParameter String log, @QueryParameter String passwords, @QueryParameter String regexes,
+                                  @QueryParameter String engine, @QueryParameter boolean global) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        MaskingDryRun dryRun;
+        try {
+            dryRun = dryRun(log, passwords, regexes, engine, global);
+        } catch (IllegalArgumentException e) {
+            return HttpResponses.errorJSON(e.getMessage());
+        }
+        return HttpResponses.okJSON(dryRun.run(StringUtils.defaultString(log)).toJSON());
+    }
+
+    /**
+     * @param passwords candidate passwords, one per line
+     * @param regexes candidate regexes, one per line
+     * @param global whether to mask the global passwords and regexes too
+     * @throws IllegalArgumentException if the sample is too large or a regex is invalid
+     */
+    private static MaskingDryRun dryRun(@CheckForNull String log, @CheckForNull String passwords, @CheckForNull String regexes,
+                                        @CheckForNull String engine, boolean global) {
+        if (log != null && log.length() > MAX_SAMPLE_LENGTH) {
+            throw new IllegalArgumentException("The sample log is larger than " + MAX_SAMPLE_LENGTH + " characters");
+        }
+        List<String> allPasswords = lines(passwords);
+        List<String> allRegexes = lines(regexes);
+        for (String regex : allRegexes) {
+            try {
+                Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid regex: " + e.getDescription(), e);
+            }
+        }
+        if (global) {
+            MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+            for (String password : config.getGlobalPasswords()) {
+                if (password != null) {
+                    allPasswords.add(password);
+                }
+            }
+            for (MaskPasswordsConfig.VarMaskRegexEntry entry : config.getGlobalVarMaskRegexesU()) {
+                allRegexes.add(entry.getValue());
+            }
+        }
+        LiteralEngine literalEngine = StringUtils.isBlank(engine)
+                ? MaskPasswordsOutputStream.LITERAL_ENGINE : MaskPasswordsOutputStream.literalEngine(engine);
+        // the sample is posted as text, which has no console charset
+        return new MaskingDryRun(literalEngine, allPasswords, allRegexes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> lines(@CheckForNull String s) {
+        List<String> lines = new ArrayList<>();
+        if (s != null) {
+            for (String line : s.split("\\r?\\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events of the plugin, so that masking stalls can be
+ * correlated with GC and I/O in a single recording.
+ *
+ * <p>When JFR is not recording them, creating and committing these events
+ * compiles down to almost nothing. {@link SlowLine}, which would be created
+ * for every console line, is only created when {@link #SLOW_LINE} is
+ * enabled. They never carry console output nor passwords.</p>
+ */
+final class MaskingEvents {
+
+    private static final String CATEGORY = "Mask Passwords";
+
+    static final EventType SLOW_LINE = EventType.getEventType(SlowLine.class);
+
+    private MaskingEvents() {
+    }
+
+    @Name("com.michelin.cio.hudson.plugins.maskpasswords.Compilation")
+    @Label("Masking Compilation")
+    @Description("Passwords and regexes compiled to mask a console")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class Compilation extends Event {
+
+        @Label("Engine")
+        String engine;
+
+        @Label("Secrets")
+        @Description("Number of passwords, URL-encoded forms included")
+        int secrets;
+
+        @Label("Regexes")
+        int regexes;
+
+        @Label("Run")
+        String runName;
+    }
+
+    @Name("com.michelin.cio.hudson.plugins.maskpasswords.SlowLine")
+    @Label("Slow Masked Line")
+    @Description("Console line whose masking took longer than the threshold")
+    @Category({"Jenkins", CATEGORY})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class SlowLine extends Event {
+
+        @Label("Length")
+        @DataAmount(DataAmount.BYTES)
+        int length;
+
+        @Label("Literal Matches")
+        int literalMatches;
+
+        @Label("Regex Matches")
+        int regexMatches;
+
+        @Label("Run")
+        String runName;
+    }
+
+    @Name("com.michelin.cio.hudson.plugins.maskpasswords.ConfigLoad")
+    @Label("Masking Configuration Load")
+    @Description("Mask Passwords global configuration read from disk")
+    @Category({"Jenkins", CATEGORY})
+    static final class ConfigLoad extends Event {
+
+        @Label("Passwords")
+        int passwords;
+
+        @Label("Regexes")
+        int regexes;
+
+        @Label("Secrets Store")
+        boolean secretStore;
+    }
+
+}
@@ -0,0 +1,309 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.LatencyHistogram;
+import com.michelin.cio.hudson.plugins.util.PatternCache;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates the masking done by all the {@link MaskPasswordsOutputStream}s
+ * of this JVM, and exposes it over JMX on the controller.
+ *
+ * <p>Streams count their lines in their own {@link MaskingStatistics} and
+ * {@link LatencyHistogram}, and merge them here when flushed, so that lines
+ * are not contended on.</p>
+ */
+public final class MaskingMetrics implements MaskingMetricsMXBean {
+
+    static final String OBJECT_NAME = "com.michelin.cio.hudson.plugins.maskpasswords:type=MaskingMetrics";
+
+    private static final MaskingMetrics INSTANCE = new MaskingMetrics();
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder lineCacheHits = new LongAdder();
+    private final LongAdder lineCacheMisses = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder compilationNanos = new LongAdder();
+    private final LongAdder prewarms = new LongAdder();
+    private final LongAdder prewarmWaits = new LongAdder();
+    private final LongAdder prewarmWaitNanos = new LongAdder();
+    private final LongAdder prewarmTimeouts = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private long rateSince = System.nanoTime();
+    private long rateBytes;
+    private double bytesPerSecond;
+
+    MaskingMetrics() {
+    }
+
+    public static MaskingMetrics get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register the Mask Passwords metrics MBean", e);
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "Failed to unregister the Mask Passwords metrics MBean", e);
+        }
+    }
+
+    void streamOpened() {
+        activeStreams.incrementAndGet();
+    }
+
+    void streamClosed() {
+        activeStreams.decrementAndGet();
+    }
+
+    void matcherCacheHit() {
+        cacheHits.increment();
+    }
+
+    void matcherCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    void compiled(long nanos) {
+        compilations.increment();
+        compilationNanos.add(nanos);
+    }
+
+    void prewarmed() {
+        prewarms.increment();
+    }
+
+    void awaitedPrewarm(long nanos, boolean timedOut) {
+        prewarmWaits.increment();
+        prewarmWaitNanos.add(nanos);
+        if (timedOut) {
+            prewarmTimeouts.increment();
+        }
+    }
+
+    /**
+     * Merges the lines a stream masked since it last did.
+     */
+    void add(MaskingStatistics statistics, LatencyHistogram streamLatencies) {
+        lines.add(statistics.getLines());
+        bytes.add(statistics.getBytes());
+        lineCacheHits.add(statistics.getLineCacheHits());
+        lineCacheMisses.add(statistics.getLineCacheMisses());
+        streamLatencies.addTo(latencies);
+    }
+
+    @Override
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    @Override
+    public long getLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateSince >= RATE_INTERVAL_NANOS) {
+            long total = bytes.sum();
+            bytesPerSecond = (total - rateBytes) * 1e9 / (now - rateSince);
+            rateSince = now;
+            rateBytes = total;
+        }
+        return bytesPerSecond;
+    }
+
+    @Override
+    public long getMatcherCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getMatcherCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getMatcherCacheHitRate() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public int getSharedMatchers() {
+        return SharedMatchers.size();
+    }
+
+    @Override
+    public int getPatternCacheSize() {
+        return PatternCache.size();
+    }
+
+    @Override
+    public long getPatternCacheHits() {
+        return PatternCache.getHits();
+    }
+
+    @Override
+    public long getPatternCacheMisses() {
+        return PatternCache.getMisses();
+    }
+
+    @Override
+    public long getPatternCacheEvictions() {
+        return PatternCache.getEvictions();
+    }
+
+    @Override
+    public long getPatternCacheCollections() {
+        return PatternCache.getCollections();
+    }
+
+    @Override
+    public long getLineCacheHits() {
+        return lineCacheHits.sum();
+    }
+
+    @Override
+    public long getLineCacheMisses() {
+        return lineCacheMisses.sum();
+    }
+
+    @Override
+    public double getLineCacheHitRate() {
+        long hits = lineCacheHits.sum();
+        long lookups = hits + lineCacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    @Override
+    public long getCompilationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(compilationNanos.sum());
+    }
+
+    @Override
+    public long getPrewarms() {
+        return prewarms.sum();
+    }
+
+    @Override
+    public long getPrewarmWaits() {
+        return prewarmWaits.sum();
+    }
+
+    @Override
+    public long getPrewarmWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(prewarmWaitNanos.sum());
+    }
+
+    @Override
+    public long getPrewarmTimeouts() {
+        return prewarmTimeouts.sum();
+    }
+
+    @Override
+    public long getLineLatencyCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public double getLineLatencyMeanMicros() {
+        return latencies.getMean() / 1000;
+    }
+
+    @Override
+    public double getLineLatencyP50Micros() {
+        return latencies.getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getLineLatencyP90Micros() {
+        return latencies.getValueAtPercentile(90) / 1000.0;
+    }
+
+    @Override
+    public double getLineLatencyP99Micros() {
+        return latencies.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getLineLatencyP999Micros() {
+        return latencies.getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getLineLatencyMaxMicros() {
+        return latencies.getMax() / 1000.0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        lines.reset();
+        bytes.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        lineCacheHits.reset();
+        lineCacheMisses.reset();
+        compilations.reset();
+        compilationNanos.reset();
+        prewarms.reset();
+        prewarmWaits.reset();
+        prewarmWaitNanos.reset();
+        prewarmTimeouts.reset();
+        PatternCache.resetStatistics();
+        latencies.clear();
+        rateSince = System.nanoTime();
+        rateBytes = 0;
+        bytesPerSecond = 0;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MaskingMetrics.class.getName());
+
+}
@@ -0,0 +1,133 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+/**
+ * Controller-wide masking metrics, registered as
+ * {@value MaskingMetrics#OBJECT_NAME}.
+ *
+ * <p>Only the console output masked on the controller is accounted for:
+ * with Pipeline, the output of the steps run on agents is masked there.</p>
+ */
+public interface MaskingMetricsMXBean {
+
+    /**
+     * Number of masking streams opened and not yet closed.
+     */
+    int getActiveStreams();
+
+    long getLines();
+
+    long getBytes();
+
+    /**
+     * Bytes masked per second, over the time since the previous measure
+     * (at least 10 seconds before).
+     */
+    double getBytesPerSecond();
+
+    /**
+     * Number of times compiled passwords or regexes could be reused rather
+     * than compiled again, by the same build or by another one masking the
+     * same: that many compiled copies were saved.
+     */
+    long getMatcherCacheHits();
+
+    long getMatcherCacheMisses();
+
+    /**
+     * Ratio of {@link #getMatcherCacheHits} over all lookups, between 0 and 1.
+     */
+    double getMatcherCacheHitRate();
+
+    /**
+     * Number of compiled sets of passwords or regexes in use, each shared by
+     * the streams masking the same.
+     */
+    int getSharedMatchers();
+
+    /**
+     * Number of regexes in the process-wide cache of compiled regexes, some
+     * of which may no longer be used.
+     */
+    int getPatternCacheSize();
+
+    /**
+     * Number of times a regex was found compiled already, by another build
+     * most of the time.
+     */
+    long getPatternCacheHits();
+
+    long getPatternCacheMisses();
+
+    /**
+     * Number of compiled regexes evicted to keep the cache within its
+     * maximum size: if high, the size may be worth raising.
+     */
+    long getPatternCacheEvictions();
+
+    /**
+     * Number of compiled regexes removed from the cache as no build used
+     * them any longer.
+     */
+    long getPatternCacheCollections();
+
+    /**
+     * Number of lines whose masking was found in the line cache of their
+     * stream, rather than done again.
+     */
+    long getLineCacheHits();
+
+    long getLineCacheMisses();
+
+    /**
+     * Ratio of {@link #getLineCacheHits} over all lookups, between 0 and 1;
+     * 0 if the line cache is disabled.
+     */
+    double getLineCacheHitRate();
+
+    /**
+     * Number of times passwords or regexes were compiled.
+     */
+    long getCompilations();
+
+    long getCompilationMillis();
+
+    /**
+     * Number of times the global passwords were compiled in the background,
+     * at startup or once saved.
+     */
+    long getPrewarms();
+
+    /**
+     * Number of builds which waited for the global passwords being compiled
+     * in the background.
+     */
+    long getPrewarmWaits();
+
+    long getPrewarmWaitMillis();
+
+    /**
+     * Number of builds which gave up waiting for the global passwords being
+     * compiled in the background, and compiled them too.
+     */
+    long getPrewarmTimeouts();
+
+    long getLineLatencyCount();
+
+    double getLineLatencyMeanMicros();
+
+    double getLineLatencyP50Micros();
+
+    double getLineLatencyP90Micros();
+
+    double getLineLatencyP99Micros();
+
+    double getLineLatencyP999Micros();
+
+    double getLineLatencyMaxMicros();
+
+    /**
+     * Resets all the counters but {@link #getActiveStreams}.
+     */
+    void reset();
+
+}
@@ -0,0 +1,71 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.PatternProfiler;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import org.jvnet.localizer.ResourceBundleHolder;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.util.List;
+
+/**
+ * "Masking profiler" page, ranking the masking regexes by the cost sampled by
+ * the {@link PatternProfiler}.
+ */
+@Extension
+public class MaskingProfilerLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-analytics";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return ResourceBundleHolder.get(MaskingProfilerLink.class).format("DisplayName");
+    }
+
+    @Override
+    public String getDescription() {
+        return ResourceBundleHolder.get(MaskingProfilerLink.class).format("Description");
+    }
+
+    @Override
+    public String getUrlName() {
+        return "maskPasswordsProfiler";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    public boolean isEnabled() {
+        return PatternProfiler.isEnabled();
+    }
+
+    public int getSampleRate() {
+        return PatternProfiler.SAMPLE_RATE;
+    }
+
+    public List<PatternProfiler.PatternCost> getCosts() {
+        return PatternProfiler.getCosts();
+    }
+
+    @RequirePOST
+    public HttpResponse doReset() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        PatternProfiler.reset();
+        return HttpResponses.redirectToDot();
+    }
+
+}
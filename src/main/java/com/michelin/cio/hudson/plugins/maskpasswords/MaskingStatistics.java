@@ -0,0 +1,191 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * What masking the console output cost: counters of one or more
+ * {@link MaskPasswordsOutputStream}s.
+ *
+ * <p>A stream updates its own instance without synchronization, and merges
+ * it into the one of its run with {@link #add}. Only the streams of the
+ * controller can reach their run: what is masked on agents, as the output of
+ * most Pipeline steps, is not counted.</p>
+ */
+@ExportedBean
+public final class MaskingStatistics {
+
+    private long lines;
+    private long partialLines;
+    private long binaryLines;
+    private long bytes;
+    private long maskedLines;
+    private long literalMatches;
+    private long regexMatches;
+    private long maskingNanos;
+    private int peakBufferSize;
+    private long lineCacheHits;
+    private long lineCacheMisses;
+
+    void line(int length, boolean masked, int literals, int regexes, long nanos) {
+        lines++;
+        count(length, masked, literals, regexes, nanos);
+    }
+
+    /**
+     * Counts the beginning of a line, written before the line ended.
+     */
+    void partialLine(int length, boolean masked, int literals, int regexes, long nanos) {
+        partialLines++;
+        count(length, masked, literals, regexes, nanos);
+    }
+
+    /**
+     * Counts a line, or the beginning of one, found to be binary output.
+     */
+    void binaryLine() {
+        binaryLines++;
+    }
+
+    private void count(int length, boolean masked, int literals, int regexes, long nanos) {
+        bytes += length;
+        if (masked) {
+            maskedLines++;
+        }
+        literalMatches += literals;
+        regexMatches += regexes;
+        maskingNanos += nanos;
+    }
+
+    /**
+     * Counts the size the line buffer grew to.
+     */
+    void buffer(int size) {
+        peakBufferSize = Math.max(peakBufferSize, size);
+    }
+
+    void lineCacheLookup(boolean hit) {
+        if (hit) {
+            lineCacheHits++;
+        } else {
+            lineCacheMisses++;
+        }
+    }
+
+    synchronized void add(MaskingStatistics other) {
+        lines += other.lines;
+        partialLines += other.partialLines;
+        binaryLines += other.binaryLines;
+        bytes += other.bytes;
+        maskedLines += other.maskedLines;
+        literalMatches += other.literalMatches;
+        regexMatches += other.regexMatches;
+        maskingNanos += other.maskingNanos;
+        peakBufferSize = Math.max(peakBufferSize, other.peakBufferSize);
+        lineCacheHits += other.lineCacheHits;
+        lineCacheMisses += other.lineCacheMisses;
+    }
+
+    void clear() {
+        lines = partialLines = binaryLines = bytes = maskedLines = literalMatches = regexMatches = maskingNanos = lineCacheHits = lineCacheMisses = 0;
+        peakBufferSize = 0;
+    }
+
+    boolean isEmpty() {
+        return lines == 0 && partialLines == 0;
+    }
+
+    /**
+     * Number of lines which went through masking.
+     */
+    @Exported
+    public synchronized long getLines() {
+        return lines;
+    }
+
+    /**
+     * Number of times the beginning of a line was masked and written before
+     * the line ended: on a carriage return, or see
+     * {@link MaskPasswordsOutputStream#PARTIAL_LINE_MILLIS}.
+     */
+    @Exported
+    public synchronized long getPartialLines() {
+        return partialLines;
+    }
+
+    /**
+     * Number of lines, or beginnings of lines, found to be binary output,
+     * see {@link MaskPasswordsOutputStream#BINARY_POLICY}.
+     */
+    @Exported
+    public synchronized long getBinaryLines() {
+        return binaryLines;
+    }
+
+    /**
+     * Number of bytes which went through masking.
+     */
+    @Exported
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of lines in which something was masked.
+     */
+    @Exported
+    public synchronized long getMaskedLines() {
+        return maskedLines;
+    }
+
+    /**
+     * Number of occurrences of passwords found.
+     */
+    @Exported
+    public synchronized long getLiteralMatches() {
+        return literalMatches;
+    }
+
+    /**
+     * Number of regex matches found.
+     */
+    @Exported
+    public synchronized long getRegexMatches() {
+        return regexMatches;
+    }
+
+    /**
+     * Cumulative time spent masking lines, in nanoseconds.
+     */
+    @Exported
+    public synchronized long getMaskingNanos() {
+        return maskingNanos;
+    }
+
+    /**
+     * Largest size of the buffer of the current line, in bytes.
+     */
+    @Exported
+    public synchronized int getPeakBufferSize() {
+        return peakBufferSize;
+    }
+
+    /**
+     * Number of lines whose masking was found in the line cache, see
+     * {@link MaskPasswordsOutputStream#LINE_CACHE_SIZE}.
+     */
+    @Exported
+    public synchronized long getLineCacheHits() {
+        return lineCacheHits;
+    }
+
+    /**
+     * Number of lines looked up in the line cache and not found; 0 if the
+     * line cache is disabled.
+     */
+    @Exported
+    public synchronized long getLineCacheMisses() {
+        return lineCacheMisses;
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+import org.jvnet.localizer.ResourceBundleHolder;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Masking statistics of a run, summed over all its
+ * {@link MaskPasswordsOutputStream}s and shown on the build page.
+ *
+ * <p>Only the streams living on the controller report here: output which
+ * gets masked on an agent, as can happen with Pipeline, is not counted.</p>
+ *
+ * <p>The statistics are saved with the run once it is finalized, when its
+ * console streams are closed, rather than whenever a stream reports.</p>
+ */
+@ExportedBean
+public class MaskingStatisticsAction implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(MaskingStatisticsAction.class.getName());
+
+    private final MaskingStatistics statistics = new MaskingStatistics();
+    private transient Run<?, ?> run;
+    /** Whether statistics were added since they were last saved. */
+    private transient volatile boolean unsaved;
+
+    @Exported
+    public MaskingStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Share of the masked output, in percent, in which something was masked.
+     */
+    public double getMaskedLinesPercentage() {
+        long lines = statistics.getLines();
+        return lines == 0 ? 0 : 100.0 * statistics.getMaskedLines() / lines;
+    }
+
+    /**
+     * Share of the lines looked up in the line cache, in percent, which were
+     * found there.
+     */
+    public double getLineCacheHitPercentage() {
+        long lookups = statistics.getLineCacheHits() + statistics.getLineCacheMisses();
+        return lookups == 0 ? 0 : 100.0 * statistics.getLineCacheHits() / lookups;
+    }
+
+    public long getMaskingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(statistics.getMaskingNanos());
+    }
+
+    /**
+     * Average time spent masking a line, in microseconds.
+     */
+    public double getMicrosPerLine() {
+        long lines = statistics.getLines();
+        return lines == 0 ? 0 : statistics.getMaskingNanos() / 1000.0 / lines;
+    }
+
+    /**
+     * Adds the statistics of a stream. They are saved when the run is
+     * finalized, or right away if it is already.
+     */
+    void add(MaskingStatistics streamStatistics) {
+        statistics.add(streamStatistics);
+        unsaved = true;
+        if (run != null && !run.isLogUpdated()) {
+            save();
+        }
+    }
+
+    private void save() {
+        unsaved = false;
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the masking statistics of " + run, e);
+        }
+    }
+
+    /**
+     * Returns the action of the given run, adding it if needed.
+     *
+     * @return {@code null} if not on the controller, or if the run cannot be found
+     */
+    @CheckForNull
+    static MaskingStatisticsAction of(String runId) {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
+        Run<?, ?> run;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            run = Run.fromExternalizableId(runId);
+        }
+        if (run == null) {
+            return null;
+        }
+        synchronized (run) {
+            MaskingStatisticsAction action = run.getAction(MaskingStatisticsAction.class);
+            if (action == null) {
+                action = new MaskingStatisticsAction();
+                run.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return ResourceBundleHolder.get(MaskingStatisticsAction.class).format("DisplayName");
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Saves the statistics reported while the run was building.
+     */
+    @Extension
+    public static final class SaveOnFinalized extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onFinalized(Run<?, ?> r) {
+            MaskingStatisticsAction action = r.getAction(MaskingStatisticsAction.class);
+            if (action != null && action.unsaved && action.run != null) {
+                action.save();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.AhoCorasickLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskPasswordsUtil;
+import com.michelin.cio.hudson.plugins.util.PatternCache;
+import com.michelin.cio.hudson.plugins.util.SwarByteScanner;
+import com.michelin.cio.hudson.plugins.util.WeakInterner;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled passwords and regexes, shared by the streams masking the same
+ * ones: concurrent builds of jobs generated from one template, for instance,
+ * then hold a single copy.
+ *
+ * <p>What was compiled is interned by a salted fingerprint of the passwords
+ * and the regexes, so that they cannot be told from the keys, and only for as
+ * long as a stream uses it, see {@link WeakInterner}.</p>
+ */
+final class SharedMatchers {
+
+    private static final WeakInterner<LiteralMatcher> LITERALS = new WeakInterner<>();
+    private static final WeakInterner<Patterns> PATTERNS = new WeakInterner<>();
+    private static final byte[] SALT = new byte[16];
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+    }
+
+    private SharedMatchers() {
+    }
+
+    /**
+     * Returns the passwords compiled by {@code compile}, or as compiled by an
+     * earlier call for the same ones.
+     *
+     * @param kind what {@code compile} compiles the passwords into
+     */
+    static LiteralMatcher literals(String kind, @CheckForNull Collection<String> passwords, Charset charset,
+                                   Supplier<LiteralMatcher> compile) {
+        String key = fingerprint(kind, charset, passwords, null);
+        LiteralMatcher shared = LITERALS.get(key);
+        if (shared != null) {
+            MaskingMetrics.get().matcherCacheHit();
+            return shared;
+        }
+        MaskingMetrics.get().matcherCacheMiss();
+        return LITERALS.intern(key, compile.get());
+    }
+
+    /**
+     * Returns the given passwords and regexes compiled into patterns, or as
+     * compiled by an earlier call for the same ones.
+     */
+    static Patterns patterns(@CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, Charset charset) {
+        String key = fingerprint("patterns", charset, passwords, regexes);
+        Patterns shared = PATTERNS.get(key);
+        if (shared != null) {
+            MaskingMetrics.get().matcherCacheHit();
+            return shared;
+        }
+        long start = System.nanoTime();
+        Patterns patterns = new Patterns(passwords, regexes, charset);
+        if (!patterns.isEmpty()) {
+            MaskingMetrics.get().matcherCacheMiss();
+            MaskingMetrics.get().compiled(System.nanoTime() - start);
+        }
+        return PATTERNS.intern(key, patterns);
+    }
+
+    /**
+     * Number of compiled passwords and regexes in use, each shared by one or
+     * more streams.
+     */
+    static int size() {
+        return LITERALS.size() + PATTERNS.size();
+    }
+
+    static void clear() {
+        LITERALS.clear();
+        PATTERNS.clear();
+    }
+
+    /**
+     * The passwords are fingerprinted as a set, in which neither their order
+     * nor their duplicates matter; the regexes in order, as the first one to
+     * match a part of a line wins.
+     */
+    private static String fingerprint(String kind, Charset charset, @CheckForNull Collection<String> passwords,
+                                      @CheckForNull Collection<String> regexes) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        md.update(SALT);
+        update(md, kind);
+        update(md, charset.name());
+        for (String password : normalize(passwords)) {
+            update(md, password);
+        }
+        md.update((byte) 1);
+        if (regexes != null) {
+            for (String regex : regexes) {
+                update(md, regex);
+            }
+        }
+        return Base64.getEncoder().encodeToString(md.digest());
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    /**
+     * The given passwords, and their URL-encoded forms, longest first so that
+     * a password is not masked in part only when another one starts it.
+     */
+    private static Set<String> normalize(@CheckForNull Collection<String> passwords) {
+        Set<String> normalized = new TreeSet<>(Comparator.comparingInt(String::length).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        normalized.addAll(MaskPasswordsUtil.withUrlEncodedVariants(passwords));
+        return normalized;
+    }
+
+    /**
+     * Passwords matched as a regex, and regexes, compiled for a stream.
+     */
+    static final class Patterns {
+
+        /**
+         * The passwords aggregated into a single regex, when not matched by
+         * a {@link LiteralMatcher}.
+         */
+        @CheckForNull
+        final Pattern passwordsAsPattern;
+        /**
+         * Finds the bytes a password may start with, so that the lines
+         * without any skip {@link #passwordsAsPattern}.
+         */
+        @CheckForNull
+        final SwarByteScanner passwordsFirstBytes;
+        final List<Pattern> regexesAsPatterns;
+        /** The patterns a partial line is checked against. */
+        final List<Pattern> settlingPatterns;
+        /** Passwords spanning several lines. */
+        @CheckForNull
+        final AhoCorasickLiteralMatcher multiLineMatcher;
+        final int secrets;
+        /** {@link #passwordsAsPattern} as bytes, for {@link #binaryMatcher}. */
+        @CheckForNull
+        private List<byte[]> binaryLiterals;
+        @CheckForNull
+        private LiteralMatcher binaryMatcher;
+
+        Patterns(@CheckForNull Collection<String> passwords, @CheckForNull Collection<String> regexes, Charset charset) {
+            Set<String> literals = normalize(passwords);
+            List<byte[]> multiLineLiterals = MaskPasswordsOutputStream.removeMultiLine(literals, charset);
+            multiLineMatcher = multiLineLiterals.isEmpty() ? null : AhoCorasickLiteralMatcher.compile(multiLineLiterals);
+            if (!literals.isEmpty()) {
+                // Passwords aggregated into single regex which is compiled as a pattern for efficiency
+                StringBuilder pwRegex = new StringBuilder().append('(');
+                for (String literal : literals) {
+                    pwRegex.append(Pattern.quote(literal));
+                    pwRegex.append('|');
+                }
+                pwRegex.deleteCharAt(pwRegex.length()-1); // removes the last unuseful pipe
+                pwRegex.append(')');
+                passwordsAsPattern = Pattern.compile(pwRegex.toString());
+                passwordsFirstBytes = MaskPasswordsOutputStream.firstBytes(literals, charset);
+                binaryLiterals = new ArrayList<>();
+                for (String literal : literals) {
+                    binaryLiterals.add(literal.getBytes(charset));
+                }
+            } else {
+                passwordsAsPattern = null;
+                passwordsFirstBytes = null;
+            }
+            List<Pattern> compiled = new ArrayList<>();
+            if (regexes != null) {
+                for (String r : regexes) {
+                    compiled.add(PatternCache.compile(r));
+                }
+            }
+            regexesAsPatterns = Collections.unmodifiableList(compiled);
+            List<Pattern> settling = new ArrayList<>(compiled);
+            if (passwordsAsPattern != null) {
+                settling.add(passwordsAsPattern);
+            }
+            settlingPatterns = Collections.unmodifiableList(settling);
+            secrets = literals.size() + multiLineLiterals.size();
+        }
+
+        boolean isEmpty() {
+            return secrets == 0 && regexesAsPatterns.isEmpty();
+        }
+
+        /**
+         * {@link #passwordsAsPattern} compiled to be matched against bytes,
+         * when first needed.
+         */
+        @CheckForNull
+        synchronized LiteralMatcher binaryMatcher() {
+            if (binaryMatcher == null && binaryLiterals != null) {
+                binaryMatcher = AhoCorasickLiteralMatcher.compile(binaryLiterals);
+                binaryLiterals = null;
+            }
+            return binaryMatcher;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.BinaryPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tuning knobs of {@link MaskPasswordsOutputStream}, as they were when a
+ * stream was opened: the stream goes by them until it is closed, whatever
+ * is changed from the script console meanwhile.
+ */
+final class StreamOptions {
+
+    /** See {@link MaskPasswordsOutputStream#LINE_CACHE_SIZE}. */
+    final int lineCacheSize;
+    /** See {@link MaskPasswordsOutputStream#PARTIAL_LINE_MILLIS}; 0 if partial lines are not written. */
+    final long partialLineNanos;
+    /** See {@link MaskPasswordsOutputStream#PRESERVE_LENGTH}. */
+    final boolean preserveLength;
+    /** See {@link MaskPasswordsOutputStream#ANSI_AWARE}. */
+    final boolean ansiAware;
+    /** See {@link MaskPasswordsOutputStream#NOTE_AWARE}. */
+    final boolean noteAware;
+    /** See {@link MaskPasswordsOutputStream#SEGMENT_CARRIAGE_RETURNS}. */
+    final boolean segmentCarriageReturns;
+    /** See {@link MaskPasswordsOutputStream#BINARY_POLICY}. */
+    final BinaryPolicy binaryPolicy;
+    /** See {@link MaskPasswordsOutputStream#TIME_LINES}. */
+    final boolean timeLines;
+
+    /**
+     * @param dryRun whether for a {@link MaskingDryRun}, whose lines are
+     *               neither cached nor written in part
+     */
+    private StreamOptions(boolean dryRun) {
+        this.lineCacheSize = dryRun ? 0 : MaskPasswordsOutputStream.LINE_CACHE_SIZE;
+        this.partialLineNanos = dryRun ? 0 : TimeUnit.MILLISECONDS.toNanos(MaskPasswordsOutputStream.PARTIAL_LINE_MILLIS);
+        this.preserveLength = MaskPasswordsOutputStream.PRESERVE_LENGTH;
+        this.ansiAware = MaskPasswordsOutputStream.ANSI_AWARE;
+        this.noteAware = MaskPasswordsOutputStream.NOTE_AWARE;
+        this.segmentCarriageReturns = MaskPasswordsOutputStream.SEGMENT_CARRIAGE_RETURNS;
+        this.binaryPolicy = MaskPasswordsOutputStream.BINARY_POLICY;
+        this.timeLines = MaskPasswordsOutputStream.TIME_LINES;
+    }
+
+    static StreamOptions current() {
+        return new StreamOptions(false);
+    }
+
+    static StreamOptions forDryRun() {
+        return new StreamOptions(true);
+    }
+}
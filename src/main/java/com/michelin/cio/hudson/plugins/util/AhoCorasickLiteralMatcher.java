@@ -0,0 +1,339 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link LiteralMatcher} based on an Aho-Corasick automaton over bytes.
+ *
+ * <p>The trie is stored as a double array: a node {@code s} has a child on
+ * byte {@code c} iff {@code check(base(s) + c) == s}, and that child is node
+ * {@code base(s) + c}. {@code base} and {@code check} are interleaved in a
+ * single {@code int[]}, so following an edge reads two adjacent ints, and the
+ * failure links and outputs are {@code int[]}s indexed by node: there are no
+ * per-node objects and nothing gets boxed on the console hot path. A line is
+ * scanned once, whatever the number of secrets.</p>
+ *
+ * <p>When the secrets start with only a few distinct bytes, which is the case
+ * with the handful of passwords of a typical build, the automaton is only
+ * entered at the positions found by a {@link SwarByteScanner}: the bulk of a
+ * line without secrets is skipped 8 bytes at a time.</p>
+ */
+public final class AhoCorasickLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    /** State to start a scan from, see {@link #findAll(byte[], int, int, int, MaskSpans)}. */
+    public static final int ROOT = 0;
+    private static final int FREE = -1;
+
+    /** {@code base} at {@code 2 * s}, {@code check} at {@code 2 * s + 1}. */
+    private final int[] cells;
+    /** Node to go to when the next byte has no edge. */
+    private final int[] fail;
+    /** Length of the longest secret ending at each node, through its failure links; 0 if none. */
+    private final int[] outLen;
+    /** Length of the prefix of a secret each node stands for. */
+    private final int[] depth;
+    private final int maxLength;
+    /** Finds the next byte starting a secret, if there are few enough such bytes. */
+    @CheckForNull
+    private final SwarByteScanner firstBytes;
+
+    private AhoCorasickLiteralMatcher(int[] cells, int[] fail, int[] outLen, int[] depth, int maxLength) {
+        this.cells = cells;
+        this.fail = fail;
+        this.outLen = outLen;
+        this.depth = depth;
+        this.maxLength = maxLength;
+        boolean[] first = new boolean[256];
+        for (int c = 0; c < 256; c++) {
+            first[c] = cells[2 * (cells[2 * ROOT] + c) + 1] == ROOT;
+        }
+        this.firstBytes = SwarByteScanner.of(first);
+    }
+
+    /**
+     * Builds a matcher for the given secrets. Empty secrets are ignored.
+     */
+    public static AhoCorasickLiteralMatcher compile(Collection<byte[]> secrets) {
+        List<byte[]> sorted = new ArrayList<>();
+        for (byte[] secret : secrets) {
+            if (secret.length > 0) {
+                sorted.add(secret);
+            }
+        }
+        sorted.sort(Arrays::compareUnsigned);
+        return new Builder(sorted).build();
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        findAll(b, off, len, ROOT, spans);
+    }
+
+    /**
+     * Like {@link #findAll(byte[], int, int, MaskSpans)}, resuming from the
+     * state the previous buffer was left in, so that the secrets spanning
+     * several buffers are found too. The last {@link #depth} bytes scanned
+     * before must then be kept right before {@code off}, as the ranges of
+     * such secrets start there.
+     *
+     * @param state {@link #ROOT}, or what the previous call returned
+     * @return the state to resume from with the next buffer
+     */
+    public int findAll(byte[] b, int off, int len, int state, MaskSpans spans) {
+        int[] cells = this.cells;
+        SwarByteScanner firstBytes = this.firstBytes;
+        int end = off + len;
+        int s = state;
+        for (int i = off; i < end; i++) {
+            if (s == ROOT && firstBytes != null) {
+                i = firstBytes.indexOf(b, i, end);
+                if (i == end) {
+                    break;
+                }
+            }
+            int c = b[i] & 0xFF;
+            int t = cells[2 * s] + c;
+            while (cells[2 * t + 1] != s) {
+                if (s == ROOT) {
+                    t = ROOT;
+                    break;
+                }
+                s = fail[s];
+                t = cells[2 * s] + c;
+            }
+            s = t;
+            int n = outLen[s];
+            if (n > 0) {
+                spans.add(i + 1 - n, i + 1);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the number of bytes at the end of what was scanned which are
+     * the beginning of a secret, when left in the given state.
+     */
+    public int depth(int state) {
+        return depth[state];
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the number of slots of the double array, used or not.
+     */
+    public int capacity() {
+        return fail.length;
+    }
+
+    /**
+     * Lays the trie of the sorted secrets out breadth first: the children of
+     * a node are the distinct bytes at its depth in the range of secrets
+     * sharing its prefix, and its base is the first one for which all the
+     * children slots are free.
+     */
+    private static final class Builder {
+
+        private final List<byte[]> secrets;
+        private int[] base = new int[1024];
+        private int[] check = new int[1024];
+        /** Free slots point to themselves, used ones to a slot after them which may be free. */
+        private int[] skip = new int[1024];
+        private int[] depth = new int[1024];
+        private boolean[] terminal = new boolean[1024];
+        /** Nodes in breadth first order, with the byte leading to them. */
+        private int[] order = new int[1024];
+        private int[] label = new int[1024];
+        private int nodes;
+        private int size = 1;
+
+        Builder(List<byte[]> secrets) {
+            this.secrets = secrets;
+            Arrays.fill(check, FREE);
+            Arrays.setAll(skip, i -> i);
+            occupy(ROOT, FREE);
+        }
+
+        AhoCorasickLiteralMatcher build() {
+            // (node, lo, hi): secrets[lo, hi) share the prefix of the node
+            int[] queue = new int[3 * 64];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = ROOT;
+            queue[tail++] = 0;
+            queue[tail++] = secrets.size();
+            order[nodes++] = ROOT;
+
+            int[] childLabels = new int[256];
+            int[] childLo = new int[257];
+            int maxLength = 0;
+            while (head < tail) {
+                int s = queue[head++];
+                int lo = queue[head++];
+                int hi = queue[head++];
+                int d = depth[s];
+                while (lo < hi && secrets.get(lo).length == d) {
+                    terminal[s] = true;
+                    maxLength = Math.max(maxLength, d);
+                    lo++;
+                }
+                int children = 0;
+                for (int i = lo; i < hi; i++) {
+                    int c = secrets.get(i)[d] & 0xFF;
+                    if (children == 0 || childLabels[children - 1] != c) {
+                        childLabels[children] = c;
+                        childLo[children++] = i;
+                    }
+                }
+                childLo[children] = hi;
+                if (children == 0) {
+                    continue;
+                }
+
+                int b = findBase(childLabels, children);
+                base[s] = b;
+                for (int k = 0; k < children; k++) {
+                    int t = b + childLabels[k];
+                    occupy(t, s);
+                    depth[t] = d + 1;
+                    size = Math.max(size, t + 1);
+                    ensureOrderCapacity();
+                    order[nodes] = t;
+                    label[nodes++] = childLabels[k];
+                    if (tail + 3 > queue.length) {
+                        if (head > queue.length / 2) {
+                            System.arraycopy(queue, head, queue, 0, tail - head);
+                            tail -= head;
+                            head = 0;
+                        } else {
+                            queue = Arrays.copyOf(queue, queue.length * 2);
+                        }
+                    }
+                    queue[tail++] = t;
+                    queue[tail++] = childLo[k];
+                    queue[tail++] = childLo[k + 1];
+                }
+            }
+
+            // every base + byte must be a valid slot, so that no bound check is needed when scanning
+            int capacity = size;
+            for (int s = 0; s < size; s++) {
+                if (skip[s] != s) {
+                    capacity = Math.max(capacity, base[s] + 256);
+                }
+            }
+            ensureCapacity(capacity);
+
+            int[] fail = failureLinks(capacity);
+            int[] cells = new int[2 * capacity];
+            for (int s = 0; s < capacity; s++) {
+                cells[2 * s] = base[s];
+                cells[2 * s + 1] = check[s];
+            }
+            return new AhoCorasickLiteralMatcher(cells, fail, outputs(capacity, fail), Arrays.copyOf(depth, capacity), maxLength);
+        }
+
+        private int findBase(int[] labels, int children) {
+            for (int p = nextFree(labels[0] + 1); ; p = nextFree(p + 1)) {
+                int b = p - labels[0];
+                ensureCapacity(b + 256);
+                boolean fits = true;
+                for (int k = 1; k < children && fits; k++) {
+                    fits = check[b + labels[k]] == FREE;
+                }
+                if (fits) {
+                    return b;
+                }
+            }
+        }
+
+        /**
+         * Returns the first free slot at or after {@code p}, compressing the
+         * path followed.
+         */
+        private int nextFree(int p) {
+            ensureCapacity(p + 1);
+            int q = p;
+            while (skip[q] != q) {
+                q = skip[q];
+            }
+            while (skip[p] != p) {
+                int next = skip[p];
+                skip[p] = q;
+                p = next;
+            }
+            return q;
+        }
+
+        private void occupy(int t, int parent) {
+            ensureCapacity(t + 2);
+            check[t] = parent;
+            skip[t] = t + 1;
+        }
+
+        private int[] failureLinks(int capacity) {
+            int[] fail = new int[capacity];
+            // breadth first, so that the failure link of the parent is known
+            for (int i = 1; i < nodes; i++) {
+                int t = order[i];
+                int s = check[t];
+                int c = label[i];
+                if (s == ROOT) {
+                    fail[t] = ROOT;
+                    continue;
+                }
+                int f = fail[s];
+                while (f != ROOT && check[base[f] + c] != f) {
+                    f = fail[f];
+                }
+                int g = base[f] + c;
+                fail[t] = check[g] == f ? g : ROOT;
+            }
+            return fail;
+        }
+
+        private int[] outputs(int capacity, int[] fail) {
+            int[] outLen = new int[capacity];
+            for (int i = 1; i < nodes; i++) {
+                int t = order[i];
+                outLen[t] = terminal[t] ? depth[t] : outLen[fail[t]];
+            }
+            return outLen;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > check.length) {
+                int n = Math.max(capacity, check.length * 2);
+                int old = check.length;
+                base = Arrays.copyOf(base, n);
+                check = Arrays.copyOf(check, n);
+                Arrays.fill(check, old, n, FREE);
+                skip = Arrays.copyOf(skip, n);
+                for (int i = old; i < n; i++) {
+                    skip[i] = i;
+                }
+                depth = Arrays.copyOf(depth, n);
+                terminal = Arrays.copyOf(terminal, n);
+            }
+        }
+
+        private void ensureOrderCapacity() {
+            if (nodes == order.length) {
+                order = Arrays.copyOf(order, nodes * 2);
+                label = Arrays.copyOf(label, nodes * 2);
+            }
+        }
+    }
+
+}
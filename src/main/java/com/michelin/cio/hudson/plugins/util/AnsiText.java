@@ -0,0 +1,289 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The visible characters of a line with ANSI escape sequences, such as the
+ * colors of a build tool: a view over the line, read through from one visible
+ * run to the next, so that a secret split by a color change can still be
+ * found, and masked while leaving the escape sequences as they were.
+ *
+ * <p>Recognizes the CSI ({@code ESC [ ... final}), OSC ({@code ESC ] ...}
+ * ended by {@code BEL} or {@code ESC \}) and two-character escape sequences.
+ * An escape sequence which does not end within the line runs to its end.</p>
+ *
+ * <p>Not thread-safe, as {@link #charAt} remembers the last run it read
+ * from, regexes mostly reading forward.</p>
+ */
+public final class AnsiText implements CharSequence {
+
+    public static final int ESC = 0x1B;
+    private static final int BEL = 0x07;
+
+    private final CharSequence raw;
+    /** Where each visible run starts in the line, then where it ends. */
+    private int[] runs = new int[8];
+    /** Where each visible run starts in the visible text, and the length of the latter last. */
+    private int[] offsets = new int[5];
+    private int count;
+    private int last;
+
+    public AnsiText(CharSequence raw) {
+        this.raw = raw;
+        int length = 0;
+        int start = 0;
+        for (int i = 0; i < raw.length(); ) {
+            if (raw.charAt(i) == ESC) {
+                length = addRun(start, i, length);
+                i = escapeEnd(raw::charAt, i, raw.length());
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        length = addRun(start, raw.length(), length);
+        offsets[count] = length;
+    }
+
+    private int addRun(int start, int end, int length) {
+        if (start == end) {
+            return length;
+        }
+        if (2 * count + 2 > runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+            offsets = Arrays.copyOf(offsets, runs.length / 2 + 1);
+        }
+        runs[2 * count] = start;
+        runs[2 * count + 1] = end;
+        offsets[count] = length;
+        count++;
+        return length + end - start;
+    }
+
+    /**
+     * Whether {@code b[off, off + len)} holds an escape sequence, which in
+     * any charset compatible with ASCII starts with the {@code ESC} byte.
+     */
+    public static boolean hasEscape(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == ESC) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns where the escape sequence starting at {@code b[i]} ends.
+     */
+    public static int escapeEnd(byte[] b, int i, int end) {
+        return escapeEnd(j -> b[j] & 0xFF, i, end);
+    }
+
+    /**
+     * Copies the visible bytes of {@code b[0, len)} to {@code visible}, and
+     * where each one is in {@code b} to {@code offsets}, both at least
+     * {@code len} long.
+     *
+     * @return the number of visible bytes
+     */
+    public static int visibleBytes(byte[] b, int len, byte[] visible, int[] offsets) {
+        int n = 0;
+        for (int i = 0; i < len; ) {
+            if (b[i] == ESC) {
+                i = escapeEnd(b, i, len);
+            } else {
+                visible[n] = b[i];
+                offsets[n++] = i++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns {@code b[0, len)} with each of the given ranges of its visible
+     * bytes replaced with {@code replacement}, and the escape sequences left
+     * as they were, even within a range.
+     *
+     * @param offsets where each visible byte is, as given by {@link #visibleBytes}
+     * @param spans   {@linkplain MaskSpans#normalize normalized} ranges of visible bytes
+     */
+    public static byte[] mask(byte[] b, int len, int[] offsets, MaskSpans spans, byte[] replacement) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len + spans.size() * replacement.length);
+        int from = 0;
+        for (int k = 0; k < spans.size(); k++) {
+            int start = offsets[spans.start(k)];
+            int end = offsets[spans.end(k) - 1] + 1;
+            out.write(b, from, start - from);
+            out.write(replacement, 0, replacement.length);
+            for (int i = start; i < end; ) {
+                if (b[i] == ESC) {
+                    int escapeEnd = escapeEnd(b, i, len);
+                    out.write(b, i, escapeEnd - i);
+                    i = escapeEnd;
+                } else {
+                    i++;
+                }
+            }
+            from = end;
+        }
+        out.write(b, from, len - from);
+        return out.toByteArray();
+    }
+
+    private static int escapeEnd(IntUnaryOperator at, int i, int end) {
+        int j = i + 1;
+        if (j == end) {
+            return end;
+        }
+        int kind = at.applyAsInt(j++);
+        if (kind == '[') {
+            // parameters and intermediates, then the final byte
+            while (j < end) {
+                int c = at.applyAsInt(j++);
+                if (c >= 0x40 && c <= 0x7E) {
+                    return j;
+                }
+                if (c < 0x20 || c > 0x3F) {
+                    // not a CSI after all: the rest is visible
+                    return j - 1;
+                }
+            }
+            return end;
+        }
+        if (kind == ']') {
+            while (j < end) {
+                int c = at.applyAsInt(j++);
+                if (c == BEL) {
+                    return j;
+                }
+                if (c == ESC && j < end && at.applyAsInt(j) == '\\') {
+                    return j + 1;
+                }
+            }
+            return end;
+        }
+        return j;
+    }
+
+    @Override
+    public int length() {
+        return offsets[count];
+    }
+
+    @Override
+    public char charAt(int index) {
+        return raw.charAt(rawIndex(index));
+    }
+
+    /**
+     * Returns the index in the line of the visible character at
+     * {@code index}.
+     */
+    public int rawIndex(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + length());
+        }
+        if (index < offsets[last] || index >= offsets[last + 1]) {
+            if (index >= offsets[last + 1] && index < offsets[Math.min(last + 2, count)]) {
+                last++;
+            } else {
+                int k = Arrays.binarySearch(offsets, 0, count, index);
+                last = k >= 0 ? k : -k - 2;
+            }
+        }
+        return runs[2 * last] + index - offsets[last];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") out of " + length());
+        }
+        StringBuilder s = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            s.append(charAt(i));
+        }
+        return s.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * Adds the visible ranges where each secret is found to {@code spans}.
+     */
+    public void find(List<String> secrets, MaskSpans spans) {
+        for (String secret : secrets) {
+            if (secret.isEmpty()) {
+                continue;
+            }
+            for (int i = indexOf(secret, 0); i >= 0; i = indexOf(secret, i + 1)) {
+                spans.add(i, i + secret.length());
+            }
+        }
+    }
+
+    private int indexOf(String s, int from) {
+        char first = s.charAt(0);
+        for (int i = from; i <= length() - s.length(); i++) {
+            if (charAt(i) == first) {
+                int j = 1;
+                while (j < s.length() && charAt(i + j) == s.charAt(j)) {
+                    j++;
+                }
+                if (j == s.length()) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the line with the given visible ranges masked and the escape
+     * sequences left as they were, even within a range.
+     *
+     * @param spans   {@linkplain MaskSpans#normalize normalized} visible ranges
+     * @param charset when not {@code null}, each character of a range is
+     *                replaced with as many {@code *} as it has bytes in it,
+     *                else each range is replaced with {@code replacement}
+     */
+    public String mask(MaskSpans spans, String replacement, Charset charset) {
+        StringBuilder s = new StringBuilder(raw.length());
+        int from = 0;
+        for (int k = 0; k < spans.size(); k++) {
+            int start = rawIndex(spans.start(k));
+            int end = rawIndex(spans.end(k) - 1) + 1;
+            s.append(raw, from, start);
+            if (charset == null) {
+                s.append(replacement);
+            }
+            for (int i = start; i < end; ) {
+                if (raw.charAt(i) == ESC) {
+                    int escapeEnd = escapeEnd(raw::charAt, i, raw.length());
+                    s.append(raw, i, escapeEnd);
+                    i = escapeEnd;
+                } else {
+                    int j = i + 1;
+                    while (j < end && raw.charAt(j) != ESC) {
+                        j++;
+                    }
+                    if (charset != null) {
+                        s.append("*".repeat(raw.subSequence(i, j).toString().getBytes(charset).length));
+                    }
+                    i = j;
+                }
+            }
+            from = end;
+        }
+        return s.append(raw, from, raw.length()).toString();
+    }
+
+}
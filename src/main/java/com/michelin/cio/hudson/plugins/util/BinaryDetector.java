@@ -0,0 +1,100 @@
+package com.michelin.cio.hudson.plugins.util;
+
+/**
+ * Tells the lines of a binary file written to the console, by mistake most
+ * of the time (a tarball, a core dump...), from lines of text, in one pass
+ * over their bytes and without decoding them.
+ *
+ * <p>A line is binary when it holds a {@code NUL} byte, which text
+ * practically never does, or when more than one byte out of
+ * {@value #MAX_SUSPICIOUS_RATIO} is suspicious: a control character other
+ * than the ones terminals use (tab, escape, backspace...), or, in UTF-8, a
+ * byte which is not part of a valid sequence. A few suspicious bytes are
+ * allowed whatever the length, for the odd bell in a short line.</p>
+ */
+public final class BinaryDetector {
+
+    /** One byte out of this many may be suspicious in a line of text. */
+    public static final int MAX_SUSPICIOUS_RATIO = 10;
+    private static final int MIN_SUSPICIOUS = 4;
+
+    private BinaryDetector() {
+    }
+
+    /**
+     * @param utf8 whether the bytes are meant to be UTF-8, in which case the
+     *             invalid sequences are suspicious too
+     */
+    public static boolean isBinary(byte[] b, int off, int len, boolean utf8) {
+        int suspicious = 0;
+        int max = Math.max(MIN_SUSPICIOUS, len / MAX_SUSPICIOUS_RATIO);
+        int end = off + len;
+        for (int i = off; i < end; ) {
+            int c = b[i] & 0xFF;
+            if (c == 0) {
+                return true;
+            }
+            if (c < 0x80 || !utf8) {
+                if (isSuspicious(c)) {
+                    suspicious++;
+                }
+                i++;
+            } else {
+                int sequence = sequenceLength(b, i, end);
+                if (sequence == 0) {
+                    suspicious++;
+                    i++;
+                } else {
+                    i += sequence;
+                }
+            }
+            if (suspicious > max) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSuspicious(int c) {
+        switch (c) {
+            case '\t':
+            case '\n':
+            case '\r':
+            case '\b':
+            case '\f':
+            case 0x07: // bell
+            case 0x1B: // escape
+                return false;
+            default:
+                return c < 0x20 || c == 0x7F;
+        }
+    }
+
+    /**
+     * Returns the length of the valid UTF-8 sequence of more than one byte
+     * starting at {@code b[i]}, 0 if there is none.
+     */
+    private static int sequenceLength(byte[] b, int i, int end) {
+        int c = b[i] & 0xFF;
+        int length;
+        if (c >= 0xC2 && c <= 0xDF) {
+            length = 2;
+        } else if (c >= 0xE0 && c <= 0xEF) {
+            length = 3;
+        } else if (c >= 0xF0 && c <= 0xF4) {
+            length = 4;
+        } else {
+            // a continuation byte, or a byte never used
+            return 0;
+        }
+        // a partial write may cut the sequence
+        length = Math.min(length, end - i);
+        for (int j = i + 1; j < i + length; j++) {
+            if ((b[j] & 0xC0) != 0x80) {
+                return 0;
+            }
+        }
+        return length;
+    }
+
+}
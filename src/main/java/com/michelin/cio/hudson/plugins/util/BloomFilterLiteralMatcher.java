@@ -0,0 +1,192 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * {@link LiteralMatcher} meant for very large sets of secrets.
+ *
+ * <p>Lines are scanned with one Rabin-Karp rolling window per distinct secret
+ * length. Each window is first looked up in a register-blocked Bloom filter:
+ * all the bits of a window live in the same 64-bit word, so rejecting a
+ * window, which is what happens for almost every byte of a log, costs a
+ * single memory access into a table of about two bytes per secret. Windows
+ * which pass the filter are confirmed against the exact set, kept as sorted
+ * 128-bit salted fingerprints (see {@link RollingHashLiteralMatcher}), so the
+ * plain text secrets are not kept either.</p>
+ */
+public final class BloomFilterLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FINGERPRINT_LENGTH = RollingHash.FINGERPRINT_LENGTH;
+    /** Filter size, in bits per secret. */
+    private static final int BITS_PER_SECRET = 16;
+    /** Bits set in the filter word of each secret. */
+    private static final int BITS_PER_WORD = 6;
+
+    private final byte[] salt;
+    /** Base of the rolling hashes, see {@link RollingHash#base}. */
+    private final long base;
+    /** Mixed into the rolling hashes so that the filter layout differs from one instance to the next. */
+    private final long seed;
+    private final long[] filter;
+    /** Distinct secret lengths, ascending. */
+    private final int[] lengths;
+    /** {@code base^(length - 1)} for each length. */
+    private final long[] powers;
+    /** Sorted, distinct fingerprints of the secrets of each length. */
+    private final byte[][] fingerprints;
+
+    private BloomFilterLiteralMatcher(byte[] salt, long base, long seed, long[] filter, int[] lengths, byte[][] fingerprints) {
+        this.salt = salt;
+        this.base = base;
+        this.seed = seed;
+        this.filter = filter;
+        this.lengths = lengths;
+        this.fingerprints = fingerprints;
+        this.powers = new long[lengths.length];
+        for (int k = 0; k < lengths.length; k++) {
+            powers[k] = RollingHash.power(base, lengths[k]);
+        }
+    }
+
+    /**
+     * Builds a matcher for the given secrets. Empty secrets are ignored.
+     */
+    public static BloomFilterLiteralMatcher compile(Collection<byte[]> secrets) {
+        byte[] salt = RollingHash.salt();
+        long base = RollingHash.base();
+        long seed = new SecureRandom().nextLong();
+
+        TreeMap<Integer, List<byte[]>> byLength = new TreeMap<>();
+        int count = 0;
+        for (byte[] secret : secrets) {
+            if (secret.length > 0) {
+                byLength.computeIfAbsent(secret.length, l -> new ArrayList<>()).add(secret);
+                count++;
+            }
+        }
+
+        long[] filter = new long[Math.max(1, Integer.highestOneBit(Math.max(1, count * BITS_PER_SECRET / 64 - 1)) << 1)];
+        int[] lengths = new int[byLength.size()];
+        byte[][] fingerprints = new byte[lengths.length][];
+        int k = 0;
+        for (List<byte[]> bucket : byLength.values()) {
+            int length = bucket.get(0).length;
+            byte[][] entries = new byte[bucket.size()][];
+            for (int i = 0; i < entries.length; i++) {
+                byte[] secret = bucket.get(i);
+                long x = mix(RollingHash.hash(base, secret, 0, length), length, seed);
+                filter[word(x, filter.length)] |= bits(x);
+                entries[i] = RollingHash.fingerprint(salt, secret, 0, length);
+            }
+            Arrays.sort(entries, Arrays::compareUnsigned);
+
+            byte[] packed = new byte[entries.length * FINGERPRINT_LENGTH];
+            int n = 0;
+            for (byte[] entry : entries) {
+                if (n == 0 || Arrays.compareUnsigned(packed, (n - 1) * FINGERPRINT_LENGTH, n * FINGERPRINT_LENGTH,
+                        entry, 0, FINGERPRINT_LENGTH) != 0) {
+                    System.arraycopy(entry, 0, packed, n * FINGERPRINT_LENGTH, FINGERPRINT_LENGTH);
+                    n++;
+                }
+            }
+            lengths[k] = length;
+            fingerprints[k] = Arrays.copyOf(packed, n * FINGERPRINT_LENGTH);
+            k++;
+        }
+        return new BloomFilterLiteralMatcher(salt, base, seed, filter, lengths, fingerprints);
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        int end = off + len;
+        long[] filter = this.filter;
+        for (int k = 0; k < lengths.length && lengths[k] <= len; k++) {
+            int length = lengths[k];
+            long pow = powers[k];
+            long h = RollingHash.hash(base, b, off, length);
+            for (int i = off; ; i++) {
+                long x = mix(h, length, seed);
+                long bits = bits(x);
+                if ((filter[word(x, filter.length)] & bits) == bits && confirm(k, b, i, length)) {
+                    spans.add(i, i + length);
+                }
+                if (i + length >= end) {
+                    break;
+                }
+                h = RollingHash.roll(base, h, pow, b[i], b[i + length]);
+            }
+        }
+    }
+
+    @Override
+    public int maxLength() {
+        return lengths.length == 0 ? 0 : lengths[lengths.length - 1];
+    }
+
+    /**
+     * Returns the size of the Bloom filter, in bytes.
+     */
+    public int filterSize() {
+        return filter.length * Long.BYTES;
+    }
+
+    /**
+     * Looks the fingerprint of a window which passed the filter up in the exact set.
+     */
+    private boolean confirm(int k, byte[] b, int start, int length) {
+        byte[] actual = RollingHash.fingerprint(salt, b, start, length);
+        byte[] bucket = fingerprints[k];
+        int low = 0;
+        int high = bucket.length / FINGERPRINT_LENGTH - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int from = mid * FINGERPRINT_LENGTH;
+            int cmp = Arrays.compareUnsigned(bucket, from, from + FINGERPRINT_LENGTH, actual, 0, FINGERPRINT_LENGTH);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, so that every bit of the result depends on
+     * every bit of the rolling hash, the window length and the seed.
+     */
+    private static long mix(long h, int length, long seed) {
+        long x = h ^ seed ^ (length * 0x9E3779B97F4A7C15L);
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Index of the filter word of a window, from the high bits of its mixed hash.
+     */
+    private static int word(long x, int words) {
+        return (int) (x >>> 40) & (words - 1);
+    }
+
+    /**
+     * Bits of a window in its filter word, from the low bits of its mixed hash.
+     */
+    private static long bits(long x) {
+        long bits = 0;
+        for (int i = 0; i < BITS_PER_WORD; i++) {
+            bits |= 1L << (x >>> (6 * i));
+        }
+        return bits;
+    }
+
+}
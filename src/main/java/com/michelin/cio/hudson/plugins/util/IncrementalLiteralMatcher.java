@@ -0,0 +1,192 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * {@link LiteralMatcher} to which secrets can be added, and from which they
+ * can be removed, without compiling the others again: each change returns a
+ * new matcher, made of the same compiled {@code base}, of the secrets added
+ * since, compiled apart, and of the fingerprints of the secrets removed
+ * since, whose occurrences are then left out.
+ *
+ * <p>A change thus costs in proportion to the secrets changed, which is
+ * worth compiling again once {@link #changes} grows large.</p>
+ *
+ * <p>The secrets added are compiled by the given compiler, meant to be the
+ * one of {@code base}, and the ones removed are only kept as salted
+ * fingerprints (see {@link RollingHash#fingerprint}), so that this matcher
+ * holds no more of the secrets than its parts do. It cannot be serialized
+ * all the same: it is meant to stay where it was compiled.</p>
+ */
+public final class IncrementalLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@code base}, then the secrets added by each change. */
+    private final List<LiteralMatcher> parts;
+    /** Number of secrets in {@link #parts} but the first. */
+    private final int added;
+    private final byte[] salt;
+    /** Fingerprints of the secrets of {@link #parts} removed since. */
+    private final Set<ByteBuffer> removed;
+    /** Lengths of the secrets removed, not to fingerprint every span. */
+    private final BitSet removedLengths;
+    private final int maxLength;
+
+    private IncrementalLiteralMatcher(List<LiteralMatcher> parts, int added, byte[] salt, Set<ByteBuffer> removed,
+                                      BitSet removedLengths) {
+        this.parts = parts;
+        this.added = added;
+        this.salt = salt;
+        this.removed = removed;
+        this.removedLengths = removedLengths;
+        int max = 0;
+        for (LiteralMatcher part : parts) {
+            max = Math.max(max, part.maxLength());
+        }
+        this.maxLength = max;
+    }
+
+    /**
+     * Returns {@code matcher} with the given secrets added and removed:
+     * removing a secret which is not there, or adding one which is, does
+     * nothing.
+     *
+     * @param compiler compiles the secrets added, as {@code matcher} was
+     */
+    public static IncrementalLiteralMatcher update(LiteralMatcher matcher, Collection<byte[]> additions,
+                                                   Collection<byte[]> removals,
+                                                   Function<List<byte[]>, LiteralMatcher> compiler) {
+        IncrementalLiteralMatcher incremental = matcher instanceof IncrementalLiteralMatcher
+                ? (IncrementalLiteralMatcher) matcher
+                : new IncrementalLiteralMatcher(List.of(matcher), 0, RollingHash.salt(), Collections.emptySet(), new BitSet());
+        return incremental.with(additions, removals, compiler);
+    }
+
+    private IncrementalLiteralMatcher with(Collection<byte[]> additions, Collection<byte[]> removals,
+                                           Function<List<byte[]>, LiteralMatcher> compiler) {
+        Set<ByteBuffer> removed = new HashSet<>(this.removed);
+        BitSet removedLengths = (BitSet) this.removedLengths.clone();
+        Set<ByteBuffer> compiled = new HashSet<>();
+        List<byte[]> delta = new ArrayList<>();
+        MaskSpans spans = new MaskSpans();
+        for (byte[] secret : removals) {
+            if (secret.length > 0 && isFound(secret, spans) && removed.add(fingerprint(secret))) {
+                removedLengths.set(secret.length);
+                // the secrets found within it may not have been reported
+                // on their own, and are now to be
+                for (byte[] within : within(secret, spans)) {
+                    ByteBuffer fingerprint = fingerprint(within);
+                    if (!removed.contains(fingerprint) && compiled.add(fingerprint)) {
+                        delta.add(within);
+                    }
+                }
+            }
+        }
+        for (byte[] secret : additions) {
+            if (secret.length == 0) {
+                continue;
+            }
+            ByteBuffer fingerprint = fingerprint(secret);
+            if (!removed.remove(fingerprint) && !isFound(secret, spans) && compiled.add(fingerprint)) {
+                delta.add(secret);
+            }
+        }
+        List<LiteralMatcher> parts = this.parts;
+        if (!delta.isEmpty()) {
+            parts = new ArrayList<>(this.parts);
+            parts.add(compiler.apply(delta));
+        }
+        return new IncrementalLiteralMatcher(parts, added + delta.size(), salt, removed, removedLengths);
+    }
+
+    private ByteBuffer fingerprint(byte[] secret) {
+        return ByteBuffer.wrap(RollingHash.fingerprint(salt, secret, 0, secret.length));
+    }
+
+    /**
+     * Whether {@link #parts} have the given secret, removed since or not.
+     */
+    private boolean isFound(byte[] secret, MaskSpans spans) {
+        for (LiteralMatcher part : parts) {
+            spans.clear();
+            part.findAll(secret, 0, secret.length, spans);
+            for (int i = 0; i < spans.size(); i++) {
+                if (spans.start(i) == 0 && spans.end(i) == secret.length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the secrets of {@link #parts} found within {@code secret}, but
+     * itself.
+     */
+    private List<byte[]> within(byte[] secret, MaskSpans spans) {
+        List<byte[]> r = new ArrayList<>();
+        for (LiteralMatcher part : parts) {
+            for (int from = 0; from < secret.length; from++) {
+                spans.clear();
+                part.findAll(secret, from, secret.length - from, spans);
+                for (int i = 0; i < spans.size(); i++) {
+                    int start = spans.start(i);
+                    int end = spans.end(i);
+                    if (end - start < secret.length) {
+                        byte[] within = new byte[end - start];
+                        System.arraycopy(secret, start, within, 0, within.length);
+                        r.add(within);
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        int from = spans.size();
+        for (LiteralMatcher part : parts) {
+            part.findAll(b, off, len, spans);
+        }
+        if (!removed.isEmpty()) {
+            for (int i = spans.size() - 1; i >= from; i--) {
+                int start = spans.start(i);
+                int length = spans.end(i) - start;
+                if (removedLengths.get(length)
+                        && removed.contains(ByteBuffer.wrap(RollingHash.fingerprint(salt, b, start, length)))) {
+                    spans.remove(i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Number of secrets added or removed since {@code base} was compiled.
+     */
+    public int changes() {
+        return added + removed.size();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(IncrementalLiteralMatcher.class.getName());
+    }
+
+}
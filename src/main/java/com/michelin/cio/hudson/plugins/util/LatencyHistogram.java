@@ -0,0 +1,113 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of durations, in the manner of HdrHistogram: each
+ * power of two is split into {@value #SUB_BUCKETS} buckets, so a recorded
+ * value is known within 12.5% whatever its magnitude, with a fixed footprint
+ * of a few hundred counters.
+ *
+ * <p>Instances are not thread-safe, except for {@link #addTo}: a stream
+ * records into its own histogram, and merges it into a shared one from time
+ * to time.</p>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values are capped to about 18 minutes, in nanoseconds. */
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    public void record(long nanos) {
+        long v = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts[index(v)]++;
+        count++;
+        total += v;
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Adds the values of this histogram to {@code other}, holding the lock of
+     * the latter.
+     */
+    public void addTo(LatencyHistogram other) {
+        synchronized (other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                other.counts[i] += counts[i];
+            }
+            other.count += count;
+            other.total += total;
+            other.max = Math.max(other.max, max);
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(counts, 0);
+        count = total = max = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns the highest value of the bucket holding the given percentile,
+     * that is a value at least as high as the actual one; 0 if empty.
+     *
+     * @param percentile between 0 and 100
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} have a bucket each; above, the bucket
+     * is given by the exponent and the {@link #SUB_BUCKET_BITS} bits below
+     * the leading one.
+     */
+    static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.michelin.cio.hudson.plugins.util;
+
+/**
+ * {@link LiteralMatcher} made of a large set of secrets compiled once, such
+ * as the global passwords, and of a small set compiled for a single run, such
+ * as its password parameters: a run then only compiles its own secrets rather
+ * than all of them again.
+ *
+ * <p>The occurrences found by both are reported, in no particular order.</p>
+ */
+public final class LayeredLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LiteralMatcher base;
+    private final LiteralMatcher delta;
+    private final int maxLength;
+
+    public LayeredLiteralMatcher(LiteralMatcher base, LiteralMatcher delta) {
+        this.base = base;
+        this.delta = delta;
+        this.maxLength = Math.max(base.maxLength(), delta.maxLength());
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        base.findAll(b, off, len, spans);
+        delta.findAll(b, off, len, spans);
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    public LiteralMatcher getBase() {
+        return base;
+    }
+
+    public LiteralMatcher getDelta() {
+        return delta;
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small least-recently-used cache from lines to what masking them gave, for
+ * consoles which repeat the same lines over and over: progress output, retry
+ * loops, test banners...
+ *
+ * <p>Lines are looked up by hash, and a hit is only reported when the bytes
+ * are the same, so that a collision costs a miss and nothing more. Lines
+ * longer than {@link #MAX_LINE_LENGTH} are not cached.</p>
+ *
+ * <p>Not thread-safe: meant to be owned by a single stream.</p>
+ *
+ * @param <V> what masking a line gave
+ */
+public final class LineCache<V> {
+
+    /** Longer lines are seldom repeated, and would make the cache large. */
+    public static final int MAX_LINE_LENGTH = 1024;
+
+    private final Map<Integer, Entry<V>> entries;
+
+    /**
+     * @param capacity maximum number of lines kept, more than 0
+     */
+    public LineCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        this.entries = new LinkedHashMap<Integer, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns what was {@linkplain #put put} for the given line, if still
+     * there.
+     */
+    @CheckForNull
+    public V get(byte[] b, int off, int len) {
+        if (len > MAX_LINE_LENGTH) {
+            return null;
+        }
+        Entry<V> entry = entries.get(hash(b, off, len));
+        if (entry != null && Arrays.equals(entry.line, 0, entry.line.length, b, off, off + len)) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Caches what masking the given line gave, evicting the least recently
+     * used line if full. Lines too long are ignored.
+     */
+    public void put(byte[] b, int off, int len, V value) {
+        if (len <= MAX_LINE_LENGTH) {
+            entries.put(hash(b, off, len), new Entry<>(Arrays.copyOfRange(b, off, off + len), value));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + b[i];
+        }
+        return h;
+    }
+
+    private static final class Entry<V> {
+
+        final byte[] line;
+        final V value;
+
+        Entry(byte[] line, V value) {
+            this.line = line;
+            this.value = value;
+        }
+    }
+
+}
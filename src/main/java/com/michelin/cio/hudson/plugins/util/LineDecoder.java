@@ -0,0 +1,121 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the lines of a console, and tells where their characters start so
+ * that they are not cut within one. Not thread-safe.
+ */
+public final class LineDecoder {
+
+    private final Charset charset;
+    /** Whether a line can be cut before a byte which does not start a character. */
+    private final boolean utf8;
+    /**
+     * Whether the charset may encode a character into several bytes in
+     * another way than UTF-8, in which case where a character starts is
+     * found with a {@link CharsetDecoder}.
+     */
+    private final boolean multiByte;
+    @CheckForNull
+    private CharsetDecoder decoder;
+
+    public LineDecoder(Charset charset) {
+        this.charset = charset;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.multiByte = !utf8 && charset.newEncoder().maxBytesPerChar() > 1;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public boolean isUtf8() {
+        return utf8;
+    }
+
+    /**
+     * Decodes {@code b[off, off + len)}. Most lines being ASCII, which all
+     * the charsets of a console encode the same way, those are copied as
+     * they are rather than decoded.
+     */
+    public String decode(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] < 0) {
+                return new String(b, off, len, charset);
+            }
+        }
+        return new String(b, off, len, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends the whole characters of {@code b[off, off + len)} to
+     * {@code out}, decoded as {@link #decode} would.
+     *
+     * @return the number of bytes decoded, short of a character which is
+     *         not complete yet
+     */
+    public int decodeWhole(byte[] b, int off, int len, StringBuilder out) {
+        int i = off;
+        while (i < off + len && b[i] >= 0) {
+            out.append((char) b[i++]);
+        }
+        if (i == off + len) {
+            return len;
+        }
+        ByteBuffer in = ByteBuffer.wrap(b, i, off + len - i);
+        CharBuffer chars = CharBuffer.allocate(off + len - i);
+        decoder().reset().decode(in, chars, false);
+        out.append(chars.flip());
+        return in.position() - off;
+    }
+
+    /**
+     * Returns where the character holding {@code b[i]} starts, so that a
+     * line is not cut within a character.
+     */
+    public int characterStart(byte[] b, int i) {
+        if (utf8) {
+            while (i > 0 && (b[i] & 0xC0) == 0x80) {
+                i--;
+            }
+        } else if (multiByte) {
+            // where decoding stops, short of a whole character
+            ByteBuffer in = ByteBuffer.wrap(b, 0, i);
+            decoder().reset().decode(in, CharBuffer.allocate(i), false);
+            i = in.position();
+        }
+        return i;
+    }
+
+    /**
+     * Returns how many bytes of {@code b[0, len)} hold whole characters,
+     * short of a last one which is not complete yet.
+     */
+    public int wholeLength(byte[] b, int len) {
+        if (!utf8 || len == 0) {
+            // one byte per character, or where the decoder stops short of a whole one
+            return characterStart(b, len);
+        }
+        int start = characterStart(b, len - 1);
+        int lead = b[start] & 0xFF;
+        int length = lead < 0xC0 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+        return start + length <= len ? len : start;
+    }
+
+    private CharsetDecoder decoder() {
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        return decoder;
+    }
+}
@@ -0,0 +1,25 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.io.Serializable;
+
+/**
+ * Finds the occurrences of a fixed set of secrets, as byte strings, in a
+ * buffer. Implementations are immutable and can be shared between threads
+ * and sent to agents along with the console log filters.
+ */
+public interface LiteralMatcher extends Serializable {
+
+    /**
+     * Adds the range of every occurrence of a secret in
+     * {@code b[off, off + len)} to {@code spans}. Overlapping occurrences are
+     * all reported, except that an occurrence lying within a longer one may
+     * be left out; ranges are relative to the start of {@code b}.
+     */
+    void findAll(byte[] b, int off, int len, MaskSpans spans);
+
+    /**
+     * Returns the length, in bytes, of the longest secret.
+     */
+    int maxLength();
+
+}
@@ -3,10 +3,15 @@ package com.michelin.cio.hudson.plugins.util;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import org.apache.commons.lang3.StringUtils;
 
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,8 +21,41 @@ public class MaskPasswordsUtil {
     public final static String MASKED_STRING = "********";
 
     public static List<String> patternMatch(List<Pattern> ps, String s) {
+        return patternMatch(ps, s, false);
+    }
+
+    /**
+     * @param profile whether to sample the cost of each pattern with the
+     *                {@link PatternProfiler}, which shows them: not to be used
+     *                with patterns built from passwords
+     */
+    public static List<String> patternMatch(List<Pattern> ps, String s, boolean profile) {
+        return patternMatch(ps, (CharSequence) s, profile);
+    }
+
+    /**
+     * Like {@link #patternMatch(List, String, boolean)}, for a view of a line
+     * such as its {@link AnsiText visible text}.
+     */
+    public static List<String> patternMatch(List<Pattern> ps, CharSequence s, boolean profile) {
+        return patternMatch(ps, s, profile, null);
+    }
+
+    /**
+     * Like {@link #patternMatch(List, CharSequence, boolean)}, profiling the
+     * patterns under the given names.
+     *
+     * @param keys the names of the patterns, in the same order, {@code null}
+     *             for the ones which have none
+     */
+    public static List<String> patternMatch(List<Pattern> ps, CharSequence s, boolean profile,
+                                            @CheckForNull List<String> keys) {
         List<String> ret = new ArrayList<>();
-        for (Pattern p: ps) {
+        boolean sampled = profile && PatternProfiler.sample();
+        for (int k = 0; k < ps.size(); k++) {
+            Pattern p = ps.get(k);
+            long start = sampled ? System.nanoTime() : 0;
+            int before = ret.size();
             Matcher m = p.matcher(s);
             while (m.find()) { // Regex matches
                 if (m.groupCount() > 0) { // Regex contains group(s)
@@ -31,10 +69,63 @@ public class MaskPasswordsUtil {
                     ret.add(m.group(0));
                 }
             }
+            if (sampled) {
+                PatternProfiler.record(keys != null ? keys.get(k) : null, p.pattern(), System.nanoTime() - start, ret.size() - before, s.length());
+            }
         }
         return ret;
     }
 
+    /**
+     * Returns how much of {@code s}, at most {@code limit} characters, can be
+     * masked on its own, before the rest of the line is known: no match of
+     * the given patterns starts in it and either ends after it or depends on
+     * what may follow {@code s}, as told by {@link Matcher#hitEnd}.
+     *
+     * <p>Each pattern is looked for once over {@code s}, as the masking does;
+     * only when a search reaches the end of {@code s} are the offsets it went
+     * through tried one by one, to tell which one did.</p>
+     */
+    public static int settledLength(List<Pattern> ps, CharSequence s, int limit) {
+        int settled = limit;
+        for (Pattern p : ps) {
+            Matcher m = p.matcher(s).useTransparentBounds(true).useAnchoringBounds(false);
+            int from = 0;
+            while (from < settled) {
+                m.region(from, s.length());
+                boolean found = m.find();
+                if (m.hitEnd()) {
+                    settled = Math.min(settled, firstUnsettled(m, s, from, found ? m.start() : settled, limit));
+                    break;
+                }
+                if (!found || m.start() >= settled) {
+                    break;
+                }
+                if (m.end() > limit) {
+                    settled = m.start();
+                    break;
+                }
+                from = m.end() > m.start() ? m.end() : m.end() + 1;
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Returns the first offset from {@code from} at which a match ends after
+     * {@code limit} or hits the end of {@code s}, or {@code to} if there is
+     * none before it.
+     */
+    private static int firstUnsettled(Matcher m, CharSequence s, int from, int to, int limit) {
+        for (int i = from; i < to; i++) {
+            m.region(i, s.length());
+            if (m.lookingAt() && m.end() > limit || m.hitEnd()) {
+                return i;
+            }
+        }
+        return to;
+    }
+
     public static List<String> patternMatch(Pattern p, String s) {
         return patternMatch(Collections.singletonList(p), s);
     }
@@ -44,11 +135,54 @@ public class MaskPasswordsUtil {
             for (String secret: secrets) {
                 s = s.replaceAll(Pattern.quote(secret), MASKED_STRING);
             }
-            LOGGER.info(String.format("Masking Run[%s]'s line: %s", runName, StringUtils.strip(s)));
+            logMaskedLine(runName, s);
         }
         return s;
     }
 
+    /**
+     * Like {@link #secretsMask}, but replaces each byte of a secret, in the
+     * default encoding, with a {@code *}: the masked line is as long as the
+     * original one once encoded.
+     */
+    public static String secretsMaskPreservingLength(List<String> secrets, String s, String runName) {
+        return secretsMaskPreservingLength(secrets, s, runName, Charset.defaultCharset());
+    }
+
+    /**
+     * @param charset the charset of the console
+     */
+    public static String secretsMaskPreservingLength(List<String> secrets, String s, String runName, Charset charset) {
+        if (secrets != null && secrets.size() > 0) {
+            for (String secret: secrets) {
+                s = s.replace(secret, "*".repeat(secret.getBytes(charset).length));
+            }
+            logMaskedLine(runName, s);
+        }
+        return s;
+    }
+
+    public static void logMaskedLine(String runName, String maskedLine) {
+        LOGGER.info(String.format("Masking Run[%s]'s line: %s", runName, StringUtils.strip(maskedLine)));
+    }
+
+    /**
+     * Returns the non empty passwords, each followed by its URL-encoded form
+     * when it differs, without duplicates.
+     */
+    public static Set<String> withUrlEncodedVariants(@CheckForNull Collection<String> passwords) {
+        Set<String> r = new LinkedHashSet<>();
+        if (passwords != null) {
+            for (String pw : passwords) {
+                if (StringUtils.isNotEmpty(pw)) {
+                    r.add(pw);
+                    r.add(URLEncoder.encode(pw, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return r;
+    }
+
     public static String secretsMaskPattern(Pattern p, String s) {
         return StringUtils.isNotBlank(s) ? secretsMask(patternMatch(p, s), s, "") : s;
     }
@@ -67,7 +201,7 @@ public class MaskPasswordsUtil {
         }
         if (regexes != null) {
             for (String r: regexes) {
-                passwordsAsPatterns.add(Pattern.compile(r));
+                passwordsAsPatterns.add(PatternCache.compile(r));
             }
         }
 
@@ -0,0 +1,133 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@code [start, end)} ranges to be masked in a line.
+ * Instances are reused from one line to the next and are not thread-safe.
+ */
+public final class MaskSpans {
+
+    private int[] bounds = new int[16];
+    private int size;
+
+    public void add(int start, int end) {
+        if (2 * size + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int start(int i) {
+        return bounds[2 * i];
+    }
+
+    public int end(int i) {
+        return bounds[2 * i + 1];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Removes the {@code i}-th range, the last one taking its place.
+     */
+    public void remove(int i) {
+        size--;
+        bounds[2 * i] = bounds[2 * size];
+        bounds[2 * i + 1] = bounds[2 * size + 1];
+    }
+
+    /**
+     * Sorts the ranges and merges the overlapping or adjacent ones, so that
+     * each masked area is replaced only once.
+     */
+    public void normalize() {
+        if (size < 2) {
+            return;
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) bounds[2 * i] << 32) | (bounds[2 * i + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int n = 0;
+        for (long p : packed) {
+            int start = (int) (p >>> 32);
+            int end = (int) p;
+            if (n > 0 && start <= bounds[2 * n - 1]) {
+                bounds[2 * n - 1] = Math.max(bounds[2 * n - 1], end);
+            } else {
+                bounds[2 * n] = start;
+                bounds[2 * n + 1] = end;
+                n++;
+            }
+        }
+        size = n;
+    }
+
+    /**
+     * Drops the first {@code n} bytes of the buffer the ranges are relative
+     * to: the ranges are moved back, and cut or removed if they start in
+     * those bytes.
+     */
+    public void drop(int n) {
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            int end = end(i) - n;
+            if (end > 0) {
+                int start = Math.max(0, start(i) - n);
+                bounds[2 * k] = start;
+                bounds[2 * k + 1] = end;
+                k++;
+            }
+        }
+        size = k;
+    }
+
+    /**
+     * Overwrites each range of {@code b} with {@code value}, so that its
+     * length is kept.
+     */
+    public void fill(byte[] b, byte value) {
+        for (int i = 0; i < size; i++) {
+            Arrays.fill(b, start(i), end(i), value);
+        }
+    }
+
+    /**
+     * Returns {@code b[off, off + len)} with each (normalized) range replaced
+     * by {@code replacement}.
+     */
+    public byte[] apply(byte[] b, int off, int len, byte[] replacement) {
+        int masked = 0;
+        for (int i = 0; i < size; i++) {
+            masked += end(i) - start(i);
+        }
+        byte[] r = new byte[len - masked + size * replacement.length];
+        int from = off;
+        int to = 0;
+        for (int i = 0; i < size; i++) {
+            int n = start(i) - from;
+            System.arraycopy(b, from, r, to, n);
+            to += n;
+            System.arraycopy(replacement, 0, r, to, replacement.length);
+            to += replacement.length;
+            from = end(i);
+        }
+        System.arraycopy(b, from, r, to, off + len - from);
+        return r;
+    }
+
+}
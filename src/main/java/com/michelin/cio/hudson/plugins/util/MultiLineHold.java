@@ -0,0 +1,137 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Holds back the lines in which a password spanning several lines may have
+ * started, see {@link MultiLineLiteralMatcher}, and masks the parts of such
+ * passwords line by line once they are found, so that line breaks are kept.
+ * Not thread-safe.
+ */
+public final class MultiLineHold {
+
+    private static final byte MASK_BYTE = '*';
+
+    private static final byte[] MASKED_BYTES = MaskPasswordsUtil.MASKED_STRING.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Where the lines released go.
+     */
+    public interface Sink {
+
+        /**
+         * @param endOfLine {@code false} for the beginning of a line
+         * @param premasked whether parts of multi-line passwords were masked
+         * @param matches number of multi-line passwords which ended in the line
+         */
+        void write(byte[] line, boolean endOfLine, boolean premasked, int matches) throws IOException;
+    }
+
+    private final AhoCorasickLiteralMatcher matcher;
+    /** Whether to overwrite each byte of a password with a {@code *}, rather than the whole of it. */
+    private final boolean preserveLength;
+    /** Where {@link #matcher} was left at the end of {@link #held}. */
+    private int state = AhoCorasickLiteralMatcher.ROOT;
+    /** Lines, or beginnings of lines, in which a multi-line password may have started. */
+    private byte[] held = new byte[0];
+    private int heldLength;
+    /** Where each line in {@link #held} ends, negated for the beginning of a line. */
+    private int[] chunks = new int[8];
+    private int chunkCount;
+    /** The multi-line passwords found in {@link #held}. */
+    private final MaskSpans spans = new MaskSpans();
+
+    public MultiLineHold(AhoCorasickLiteralMatcher matcher, boolean preserveLength) {
+        this.matcher = matcher;
+        this.preserveLength = preserveLength;
+    }
+
+    /**
+     * Looks for the passwords from where the previous line left off, and
+     * holds the line back as long as one of them may have started in it:
+     * only the lines which are the beginning of a password, up to its
+     * length, are held back.
+     *
+     * @param endOfLine {@code false} for the beginning of a line
+     */
+    public void hold(byte[] bytes, int len, boolean endOfLine, Sink sink) throws IOException {
+        int from = heldLength;
+        if (heldLength + len > held.length) {
+            held = Arrays.copyOf(held, Math.max(heldLength + len, 2 * held.length));
+        }
+        System.arraycopy(bytes, 0, held, heldLength, len);
+        heldLength += len;
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+        }
+        chunks[chunkCount++] = endOfLine ? heldLength : -heldLength;
+        state = matcher.findAll(held, from, len, state, spans);
+        release(heldLength - matcher.depth(state), sink);
+    }
+
+    /**
+     * Releases all the lines held back.
+     */
+    public void releaseAll(Sink sink) throws IOException {
+        release(heldLength, sink);
+    }
+
+    /**
+     * Releases the held lines which end before {@code limit}.
+     */
+    private void release(int limit, Sink sink) throws IOException {
+        if (chunkCount == 0) {
+            return;
+        }
+        spans.normalize();
+        int from = 0;
+        int k = 0;
+        for (; k < chunkCount && Math.abs(chunks[k]) <= limit; k++) {
+            int end = Math.abs(chunks[k]);
+            MaskSpans chunkSpans = new MaskSpans();
+            int matches = 0;
+            for (int i = 0; i < spans.size(); i++) {
+                int start = Math.max(spans.start(i), from);
+                int spanEnd = Math.min(spans.end(i), end);
+                if (start >= spanEnd) {
+                    continue;
+                }
+                if (spans.end(i) <= end) {
+                    matches++;
+                }
+                for (int j = start; j < spanEnd; j++) {
+                    if (held[j] == '\n' || held[j] == '\r') {
+                        continue;
+                    }
+                    int runStart = j;
+                    while (j < spanEnd && held[j] != '\n' && held[j] != '\r') {
+                        j++;
+                    }
+                    chunkSpans.add(runStart, j);
+                }
+            }
+            byte[] chunk;
+            if (chunkSpans.isEmpty() || preserveLength) {
+                chunkSpans.fill(held, MASK_BYTE);
+                chunk = Arrays.copyOfRange(held, from, end);
+            } else {
+                chunk = chunkSpans.apply(held, from, end - from, MASKED_BYTES);
+            }
+            sink.write(chunk, chunks[k] > 0, !chunkSpans.isEmpty(), matches);
+            from = end;
+        }
+        if (k == 0) {
+            return;
+        }
+        System.arraycopy(held, from, held, 0, heldLength - from);
+        heldLength -= from;
+        System.arraycopy(chunks, k, chunks, 0, chunkCount - k);
+        chunkCount -= k;
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = chunks[i] > 0 ? chunks[i] - from : chunks[i] + from;
+        }
+        spans.drop(from);
+    }
+}
@@ -0,0 +1,43 @@
+package com.michelin.cio.hudson.plugins.util;
+
+/**
+ * {@link LiteralMatcher} for a set of secrets some of which span several
+ * lines, such as private keys or certificates.
+ *
+ * <p>{@link #findAll} and {@link #maxLength} only account for the secrets
+ * without a newline, which can be found within a line. The others are
+ * matched by {@link #getMultiLine}, which a stream can resume from one line
+ * to the next without keeping more than the lines a secret may have started
+ * in.</p>
+ */
+public final class MultiLineLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LiteralMatcher singleLine;
+    private final AhoCorasickLiteralMatcher multiLine;
+
+    public MultiLineLiteralMatcher(LiteralMatcher singleLine, AhoCorasickLiteralMatcher multiLine) {
+        this.singleLine = singleLine;
+        this.multiLine = multiLine;
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        singleLine.findAll(b, off, len, spans);
+    }
+
+    @Override
+    public int maxLength() {
+        return singleLine.maxLength();
+    }
+
+    public LiteralMatcher getSingleLine() {
+        return singleLine;
+    }
+
+    public AhoCorasickLiteralMatcher getMultiLine() {
+        return multiLine;
+    }
+
+}
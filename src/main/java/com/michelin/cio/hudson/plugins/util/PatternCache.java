@@ -0,0 +1,172 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import jenkins.util.SystemProperties;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide cache of the compiled masking regexes: the same few regexes
+ * come up in the configuration of many jobs, and are then compiled once
+ * rather than on every run.
+ *
+ * <p>The patterns are only weakly referenced, so that the ones no build uses
+ * any longer can be collected, and at most
+ * {@code com.michelin.cio.hudson.plugins.util.PatternCache.maxSize} of them
+ * (1024 by default) are kept, the least recently used being evicted.</p>
+ *
+ * <p>Passwords must not go through this cache, which would keep them in
+ * memory as its keys.</p>
+ */
+public final class PatternCache {
+
+    static final int MAX_SIZE = Math.max(1,
+            SystemProperties.getInteger(PatternCache.class.getName() + ".maxSize", 1024));
+
+    private static final ReferenceQueue<Pattern> QUEUE = new ReferenceQueue<>();
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > MAX_SIZE) {
+                EVICTIONS.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder COLLECTIONS = new LongAdder();
+
+    private PatternCache() {
+    }
+
+    /**
+     * Like {@link Pattern#compile(String)}.
+     */
+    public static Pattern compile(String regex) {
+        return compile(regex, 0);
+    }
+
+    /**
+     * Like {@link Pattern#compile(String, int)}.
+     */
+    public static Pattern compile(String regex, int flags) {
+        Key key = new Key(regex, flags);
+        synchronized (ENTRIES) {
+            expunge();
+            Entry entry = ENTRIES.get(key);
+            Pattern pattern = entry != null ? entry.get() : null;
+            if (pattern != null) {
+                HITS.increment();
+                return pattern;
+            }
+        }
+        // compiled out of the lock, as some regexes take long to
+        Pattern pattern = Pattern.compile(regex, flags);
+        MISSES.increment();
+        synchronized (ENTRIES) {
+            expunge();
+            Entry entry = ENTRIES.get(key);
+            Pattern existing = entry != null ? entry.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            ENTRIES.put(key, new Entry(key, pattern));
+        }
+        return pattern;
+    }
+
+    private static void expunge() {
+        for (Object reference = QUEUE.poll(); reference != null; reference = QUEUE.poll()) {
+            Entry entry = (Entry) reference;
+            if (ENTRIES.remove(entry.key, entry)) {
+                COLLECTIONS.increment();
+            }
+        }
+    }
+
+    /**
+     * Number of patterns cached, some of which may have been collected
+     * since.
+     */
+    public static int size() {
+        synchronized (ENTRIES) {
+            expunge();
+            return ENTRIES.size();
+        }
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Number of patterns evicted to keep the cache within its size.
+     */
+    public static long getEvictions() {
+        return EVICTIONS.sum();
+    }
+
+    /**
+     * Number of patterns removed as no longer used.
+     */
+    public static long getCollections() {
+        return COLLECTIONS.sum();
+    }
+
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    public static void resetStatistics() {
+        HITS.reset();
+        MISSES.reset();
+        EVICTIONS.reset();
+        COLLECTIONS.reset();
+    }
+
+    private static final class Key {
+
+        final String regex;
+        final int flags;
+
+        Key(String regex, int flags) {
+            this.regex = regex;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).flags == flags && ((Key) o).regex.equals(regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return regex.hashCode() * 31 + flags;
+        }
+    }
+
+    private static final class Entry extends WeakReference<Pattern> {
+
+        final Key key;
+
+        Entry(Key key, Pattern pattern) {
+            super(pattern, QUEUE);
+            this.key = key;
+        }
+    }
+
+}
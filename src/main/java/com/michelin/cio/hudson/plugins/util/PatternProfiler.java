@@ -0,0 +1,187 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jenkins.util.SystemProperties;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples the cost of the masking regexes in
+ * {@link MaskPasswordsUtil#patternMatch(List, String, boolean)}.
+ *
+ * <p>Disabled unless the
+ * {@code com.michelin.cio.hudson.plugins.util.PatternProfiler.sampleRate}
+ * system property (or {@link #SAMPLE_RATE}, from the script console) is set
+ * to {@code N > 0}, in which case one line out of {@code N}, on average, is
+ * timed. Only the lines masked in this JVM are
+ * sampled, that is not the ones masked on agents.</p>
+ *
+ * <p>Regexes are told apart by their name, when they have one, and their
+ * pattern. As many of them as {@link PatternCache} keeps are profiled, the
+ * least recently sampled being dropped.</p>
+ */
+public final class PatternProfiler {
+
+    /**
+     * One line out of this many is profiled; 0 to disable profiling.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Profiling is turned on and off from the script console")
+    public static int SAMPLE_RATE = Math.max(0,
+            SystemProperties.getInteger(PatternProfiler.class.getName() + ".sampleRate", 0));
+
+    private static final Map<Key, PatternCost> COSTS = new LinkedHashMap<Key, PatternCost>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, PatternCost> eldest) {
+            return size() > PatternCache.MAX_SIZE;
+        }
+    };
+
+    private PatternProfiler() {
+    }
+
+    public static boolean isEnabled() {
+        return SAMPLE_RATE > 0;
+    }
+
+    /**
+     * Whether the current line is to be profiled.
+     */
+    static boolean sample() {
+        int rate = SAMPLE_RATE;
+        return rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    static void record(@CheckForNull String key, String pattern, long nanos, int matches, int lineLength) {
+        PatternCost cost;
+        synchronized (COSTS) {
+            cost = COSTS.computeIfAbsent(new Key(key, pattern), k -> new PatternCost(key, pattern));
+        }
+        cost.record(nanos, matches, lineLength);
+    }
+
+    /**
+     * Returns the profiled patterns, the most expensive first.
+     */
+    public static List<PatternCost> getCosts() {
+        List<PatternCost> costs;
+        synchronized (COSTS) {
+            costs = new ArrayList<>(COSTS.values());
+        }
+        costs.sort(Comparator.comparingLong(PatternCost::getTotalNanos).reversed());
+        return costs;
+    }
+
+    public static void reset() {
+        synchronized (COSTS) {
+            COSTS.clear();
+        }
+    }
+
+    private static final class Key {
+
+        @CheckForNull
+        final String key;
+        final String pattern;
+
+        Key(@CheckForNull String key, String pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Objects.equals(((Key) o).key, key) && ((Key) o).pattern.equals(pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) * 31 + pattern.hashCode();
+        }
+    }
+
+    /**
+     * Sampled cost of a pattern.
+     */
+    public static final class PatternCost {
+
+        @CheckForNull
+        private final String key;
+        private final String pattern;
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+        private volatile long worstNanos;
+        private volatile int worstLineLength;
+
+        PatternCost(@CheckForNull String key, String pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        }
+
+        void record(long nanos, int matches, int lineLength) {
+            evaluations.increment();
+            totalNanos.add(nanos);
+            this.matches.add(matches);
+            if (nanos > worstNanos) {
+                synchronized (this) {
+                    if (nanos > worstNanos) {
+                        worstNanos = nanos;
+                        worstLineLength = lineLength;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Name of the regex, if it has one.
+         */
+        @CheckForNull
+        public String getKey() {
+            return key;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public long getEvaluations() {
+            return evaluations.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMatches() {
+            return matches.sum();
+        }
+
+        public double getMeanMicros() {
+            long n = getEvaluations();
+            return n == 0 ? 0 : getTotalNanos() / 1000.0 / n;
+        }
+
+        /**
+         * Longest time a single line took.
+         */
+        public double getWorstMicros() {
+            return worstNanos / 1000.0;
+        }
+
+        /**
+         * Length of the line which took {@link #getWorstMicros}.
+         */
+        public synchronized int getWorstLineLength() {
+            return worstLineLength;
+        }
+    }
+
+}
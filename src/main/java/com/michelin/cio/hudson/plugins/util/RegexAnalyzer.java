@@ -0,0 +1,834 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Looks for the regex constructs which can make matching a line take
+ * exponential time, and estimates the throughput of a regex on a sample
+ * build log, so that a masking regex slowing down every build can be
+ * reported before it gets saved.
+ *
+ * <p>The analysis is a heuristic over the syntax of the regex: it flags an
+ * unbounded quantifier applied to something which itself contains one
+ * ({@code (a+)+}), or to alternatives which can start with the same
+ * character ({@code (\w|\d)*}). Possessive quantifiers and atomic groups,
+ * which do not backtrack, are not flagged.</p>
+ */
+public final class RegexAnalyzer {
+
+    /**
+     * Constructs which may backtrack catastrophically.
+     */
+    public enum Construct {
+        /** An unbounded quantifier applied to an unbounded quantifier, such as {@code (a+)+}. */
+        NESTED_QUANTIFIER,
+        /** An unbounded quantifier applied to overlapping alternatives, such as {@code (a|ab)*}. */
+        OVERLAPPING_ALTERNATION
+    }
+
+    /**
+     * A construct found in a regex.
+     */
+    public static final class Finding {
+
+        private final Construct construct;
+        private final String fragment;
+
+        Finding(Construct construct, String fragment) {
+            this.construct = construct;
+            this.fragment = fragment;
+        }
+
+        public Construct getConstruct() {
+            return construct;
+        }
+
+        /**
+         * The part of the regex made of the construct.
+         */
+        public String getFragment() {
+            return fragment;
+        }
+
+        @Override
+        public String toString() {
+            return construct + " " + fragment;
+        }
+    }
+
+    /** Below this, a regex noticeably slows down the masking of every build. */
+    public static final double SLOW_MEGABYTES_PER_SECOND = 10;
+
+    /** How long the regex is run before measuring, so that it gets compiled. */
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    /** How long the throughput is measured for, at most. */
+    private static final long MEASURE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    /** How many characters the throughput is measured on, at most, so that a fast regex is done sooner. */
+    private static final long MEASURE_CHARS = 4 * 1024 * 1024;
+    /** When to give up measuring, whatever the regex is on, so that a validation takes a bounded CPU time. */
+    private static final long DEADLINE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static volatile List<String> corpus;
+
+    private RegexAnalyzer() {
+    }
+
+    /**
+     * Returns the constructs of the given regex which may backtrack
+     * catastrophically, the outermost first.
+     *
+     * @param regex a valid regex
+     */
+    public static List<Finding> analyze(String regex) {
+        List<Finding> findings = new ArrayList<>();
+        try {
+            Node root = new Parser(regex).parse();
+            root.collect(regex, findings);
+        } catch (RuntimeException e) {
+            // the regex is valid, but uses some syntax not understood here
+            LOGGER.log(Level.FINE, "Unable to analyze " + regex, e);
+        }
+        return findings;
+    }
+
+    /**
+     * Estimates how many megabytes of build log per second the given pattern
+     * can search, by finding all its matches in a bundled sample log, once
+     * warmed up, for up to 50 ms or 4 MB of it.
+     *
+     * <p>A pattern which takes more than 100 ms overall, or overflows the
+     * stack, is given the throughput achieved until then.</p>
+     */
+    public static double megabytesPerSecond(Pattern pattern) {
+        List<String> lines = corpus();
+        long start = System.nanoTime();
+        long deadline = start + DEADLINE_NANOS;
+        long measuredFrom = start;
+        boolean warm = false;
+        long chars = 0;
+        try {
+            while (true) {
+                for (String line : lines) {
+                    Matcher m = pattern.matcher(new DeadlineCharSequence(line, deadline));
+                    while (m.find()) {
+                        // only the time taken matters
+                    }
+                    chars += line.length() + 1;
+                }
+                long now = System.nanoTime();
+                if (!warm && now - start >= WARMUP_NANOS) {
+                    warm = true;
+                    measuredFrom = now;
+                    chars = 0;
+                } else if (warm && (now - measuredFrom >= MEASURE_NANOS || chars >= MEASURE_CHARS)) {
+                    break;
+                }
+            }
+        } catch (DeadlineExceeded | StackOverflowError e) {
+            // as slow as it gets
+        }
+        long elapsed = Math.max(1, System.nanoTime() - measuredFrom);
+        return chars * 1000.0 / elapsed;
+    }
+
+    static List<String> corpus() {
+        List<String> lines = corpus;
+        if (lines == null) {
+            lines = new ArrayList<>();
+            try (InputStream in = RegexAnalyzer.class.getResourceAsStream("log-corpus.txt");
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lines = Collections.unmodifiableList(lines);
+            corpus = lines;
+        }
+        return lines;
+    }
+
+    /**
+     * Stops a match when the deadline is reached, checking the clock every
+     * few thousands characters read.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+
+        private final String s;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(String s, long deadline) {
+            this.s = s;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int length() {
+            return s.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & 0xFFF) == 0 && System.nanoTime() - deadline > 0) {
+                throw new DeadlineExceeded();
+            }
+            return s.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(s.substring(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return s;
+        }
+    }
+
+    private static final class DeadlineExceeded extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Approximate set of characters: exact up to 255, hashed above.
+     */
+    private static final class CharSet {
+
+        private static final int EXACT = 256;
+        private static final int BITS = EXACT + 128;
+
+        final long[] words = new long[BITS / 64];
+
+        static CharSet of(int c) {
+            CharSet set = new CharSet();
+            set.add(c);
+            return set;
+        }
+
+        static CharSet all() {
+            return new CharSet().complement();
+        }
+
+        static CharSet range(int from, int to) {
+            CharSet set = new CharSet();
+            set.addRange(from, to);
+            return set;
+        }
+
+        void add(int c) {
+            int bit = c < EXACT ? c : EXACT + (c % (BITS - EXACT));
+            words[bit >>> 6] |= 1L << bit;
+        }
+
+        void addRange(int from, int to) {
+            if (to - from >= BITS) {
+                addAll(all());
+                return;
+            }
+            for (int c = from; c <= to; c++) {
+                add(c);
+            }
+        }
+
+        CharSet addAll(CharSet other) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= other.words[i];
+            }
+            return this;
+        }
+
+        CharSet complement() {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = ~words[i];
+            }
+            return this;
+        }
+
+        boolean intersects(CharSet other) {
+            for (int i = 0; i < words.length; i++) {
+                if ((words[i] & other.words[i]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static CharSet word() {
+            CharSet set = range('a', 'z').addAll(range('A', 'Z')).addAll(range('0', '9'));
+            set.add('_');
+            return set;
+        }
+
+        static CharSet space() {
+            CharSet set = range('\t', '\r');
+            set.add(' ');
+            return set;
+        }
+    }
+
+    /**
+     * Syntax tree of a regex, with the source range of each node.
+     */
+    private abstract static class Node {
+
+        int start;
+        int end;
+
+        /** Characters a match can start with; empty if only the empty string. */
+        abstract CharSet first();
+
+        abstract boolean nullable();
+
+        /** Whether this can match ever longer strings by backtracking. */
+        abstract boolean unbounded();
+
+        abstract List<Node> children();
+
+        void collect(String regex, List<Finding> findings) {
+            for (Node child : children()) {
+                child.collect(regex, findings);
+            }
+        }
+    }
+
+    /**
+     * A character, a class of characters, or a zero-width assertion when
+     * {@link #set} is {@code null}.
+     */
+    private static final class Atom extends Node {
+
+        final CharSet set;
+
+        Atom(CharSet set) {
+            this.set = set;
+        }
+
+        @Override
+        CharSet first() {
+            return set != null ? set : new CharSet();
+        }
+
+        @Override
+        boolean nullable() {
+            return set == null;
+        }
+
+        @Override
+        boolean unbounded() {
+            return false;
+        }
+
+        @Override
+        List<Node> children() {
+            return List.of();
+        }
+    }
+
+    private static final class Sequence extends Node {
+
+        final List<Node> items = new ArrayList<>();
+
+        @Override
+        CharSet first() {
+            CharSet first = new CharSet();
+            for (Node item : items) {
+                first.addAll(item.first());
+                if (!item.nullable()) {
+                    break;
+                }
+            }
+            return first;
+        }
+
+        @Override
+        boolean nullable() {
+            return items.stream().allMatch(Node::nullable);
+        }
+
+        @Override
+        boolean unbounded() {
+            return items.stream().anyMatch(Node::unbounded);
+        }
+
+        @Override
+        List<Node> children() {
+            return items;
+        }
+    }
+
+    private static final class Group extends Node {
+
+        final List<Node> alternatives;
+        /** An atomic group does not backtrack into its content. */
+        final boolean atomic;
+        /** A lookahead or lookbehind matches the empty string. */
+        final boolean lookaround;
+
+        Group(List<Node> alternatives, boolean atomic, boolean lookaround) {
+            this.alternatives = alternatives;
+            this.atomic = atomic;
+            this.lookaround = lookaround;
+        }
+
+        @Override
+        CharSet first() {
+            CharSet first = new CharSet();
+            if (!lookaround) {
+                for (Node alternative : alternatives) {
+                    first.addAll(alternative.first());
+                }
+            }
+            return first;
+        }
+
+        @Override
+        boolean nullable() {
+            return lookaround || alternatives.stream().anyMatch(Node::nullable);
+        }
+
+        @Override
+        boolean unbounded() {
+            return !atomic && !lookaround && alternatives.stream().anyMatch(Node::unbounded);
+        }
+
+        /**
+         * Whether a string may be matched by more than one of the alternatives.
+         */
+        boolean overlapping() {
+            if (atomic || lookaround) {
+                return false;
+            }
+            for (int i = 0; i < alternatives.size(); i++) {
+                for (int j = i + 1; j < alternatives.size(); j++) {
+                    Node a = alternatives.get(i);
+                    Node b = alternatives.get(j);
+                    if (a.nullable() || b.nullable() || a.first().intersects(b.first())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        List<Node> children() {
+            return alternatives;
+        }
+    }
+
+    private static final class Repeat extends Node {
+
+        final Node node;
+        final int min;
+        final boolean unboundedMax;
+        final boolean possessive;
+
+        Repeat(Node node, int min, boolean unboundedMax, boolean possessive) {
+            this.node = node;
+            this.min = min;
+            this.unboundedMax = unboundedMax;
+            this.possessive = possessive;
+        }
+
+        @Override
+        CharSet first() {
+            return node.first();
+        }
+
+        @Override
+        boolean nullable() {
+            return min == 0 || node.nullable();
+        }
+
+        @Override
+        boolean unbounded() {
+            return !possessive && (unboundedMax || node.unbounded());
+        }
+
+        @Override
+        List<Node> children() {
+            return List.of(node);
+        }
+
+        @Override
+        void collect(String regex, List<Finding> findings) {
+            if (unboundedMax && !possessive) {
+                if (node.unbounded()) {
+                    findings.add(new Finding(Construct.NESTED_QUANTIFIER, regex.substring(start, end)));
+                    // the inner constructs are part of this one
+                    return;
+                }
+                if (node instanceof Group && ((Group) node).overlapping()) {
+                    findings.add(new Finding(Construct.OVERLAPPING_ALTERNATION, regex.substring(start, end)));
+                    return;
+                }
+            }
+            super.collect(regex, findings);
+        }
+    }
+
+    /**
+     * Recursive descent over the syntax of {@link Pattern}, assuming the
+     * regex compiles.
+     */
+    private static final class Parser {
+
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node parse() {
+            List<Node> alternatives = alternatives();
+            if (pos < s.length()) {
+                throw new IllegalArgumentException("Unexpected " + s.charAt(pos) + " at " + pos);
+            }
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+            Group group = new Group(alternatives, false, false);
+            group.start = 0;
+            group.end = s.length();
+            return group;
+        }
+
+        private List<Node> alternatives() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (pos < s.length() && s.charAt(pos) == '|') {
+                pos++;
+                alternatives.add(sequence());
+            }
+            return alternatives;
+        }
+
+        private Sequence sequence() {
+            Sequence sequence = new Sequence();
+            sequence.start = pos;
+            while (pos < s.length() && s.charAt(pos) != '|' && s.charAt(pos) != ')') {
+                Node atom = atom();
+                if (atom != null) {
+                    sequence.items.add(quantifiers(atom));
+                }
+            }
+            sequence.end = pos;
+            return sequence;
+        }
+
+        /**
+         * @return {@code null} for a flags only group such as {@code (?i)}
+         */
+        private Node atom() {
+            int start = pos;
+            int c = s.codePointAt(pos);
+            pos += Character.charCount(c);
+            Node node;
+            switch (c) {
+                case '(':
+                    node = group();
+                    break;
+                case '[':
+                    node = new Atom(charClass());
+                    break;
+                case '.':
+                    node = new Atom(CharSet.all());
+                    break;
+                case '^':
+                case '$':
+                    node = new Atom(null);
+                    break;
+                case '\\':
+                    node = escape();
+                    break;
+                default:
+                    node = new Atom(CharSet.of(c));
+                    break;
+            }
+            if (node != null) {
+                node.start = start;
+                node.end = pos;
+            }
+            return node;
+        }
+
+        private Node group() {
+            boolean atomic = false;
+            boolean lookaround = false;
+            if (s.startsWith("?", pos)) {
+                pos++;
+                char c = s.charAt(pos);
+                if (c == ':') {
+                    pos++;
+                } else if (c == '>') {
+                    atomic = true;
+                    pos++;
+                } else if (c == '=' || c == '!') {
+                    lookaround = true;
+                    pos++;
+                } else if (c == '<' && (s.charAt(pos + 1) == '=' || s.charAt(pos + 1) == '!')) {
+                    lookaround = true;
+                    pos += 2;
+                } else if (c == '<') {
+                    pos = s.indexOf('>', pos) + 1;
+                } else {
+                    // flags, either (?idmsux-idmsux) or (?idmsux-idmsux:X)
+                    while (Character.isLetter(s.charAt(pos)) || s.charAt(pos) == '-') {
+                        pos++;
+                    }
+                    if (s.charAt(pos++) == ')') {
+                        return null;
+                    }
+                }
+            }
+            List<Node> alternatives = alternatives();
+            expect(')');
+            return new Group(alternatives, atomic, lookaround);
+        }
+
+        private Node quantifiers(Node node) {
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                int min;
+                boolean unboundedMax;
+                if (c == '*' || c == '+' || c == '?') {
+                    pos++;
+                    min = c == '+' ? 1 : 0;
+                    unboundedMax = c != '?';
+                } else if (c == '{' && pos + 1 < s.length() && Character.isDigit(s.charAt(pos + 1))) {
+                    int close = s.indexOf('}', pos);
+                    String[] bounds = s.substring(pos + 1, close).split(",", -1);
+                    min = Integer.parseInt(bounds[0]);
+                    unboundedMax = bounds.length > 1 && bounds[1].isEmpty();
+                    pos = close + 1;
+                } else {
+                    return node;
+                }
+                boolean possessive = false;
+                if (pos < s.length() && s.charAt(pos) == '+') {
+                    possessive = true;
+                    pos++;
+                } else if (pos < s.length() && s.charAt(pos) == '?') {
+                    pos++;
+                }
+                Repeat repeat = new Repeat(node, min, unboundedMax, possessive);
+                repeat.start = node.start;
+                repeat.end = pos;
+                node = repeat;
+            }
+            return node;
+        }
+
+        /**
+         * Parses what follows a backslash out of a character class.
+         *
+         * @return {@code null} for an empty quotation
+         */
+        private Node escape() {
+            char c = s.charAt(pos);
+            switch (c) {
+                case 'b':
+                case 'B':
+                case 'A':
+                case 'z':
+                case 'Z':
+                case 'G':
+                    pos++;
+                    if (c == 'b' && s.startsWith("{g}", pos)) {
+                        pos += 3;
+                    }
+                    return new Atom(null);
+                case 'Q': {
+                    pos++;
+                    int end = s.indexOf("\\E", pos);
+                    String quoted = s.substring(pos, end < 0 ? s.length() : end);
+                    pos = end < 0 ? s.length() : end + 2;
+                    return quoted.isEmpty() ? null : new Atom(CharSet.of(quoted.codePointAt(0)));
+                }
+                case 'k':
+                    pos = s.indexOf('>', pos) + 1;
+                    return new Atom(CharSet.all());
+                default:
+                    if (c >= '1' && c <= '9') {
+                        while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                            pos++;
+                        }
+                        return new Atom(CharSet.all());
+                    }
+                    return new Atom(classEscape());
+            }
+        }
+
+        /**
+         * Parses what follows a backslash which stands for characters.
+         */
+        private CharSet classEscape() {
+            char c = s.charAt(pos);
+            if (isSingle(c)) {
+                return CharSet.of(escapedChar());
+            }
+            pos++;
+            switch (c) {
+                case 'd':
+                    return CharSet.range('0', '9');
+                case 'D':
+                    return CharSet.range('0', '9').complement();
+                case 'w':
+                    return CharSet.word();
+                case 'W':
+                    return CharSet.word().complement();
+                case 's':
+                case 'h':
+                case 'v':
+                    return CharSet.space();
+                case 'S':
+                case 'H':
+                case 'V':
+                    return CharSet.space().complement();
+                case 'p':
+                case 'P':
+                case 'N':
+                    if (s.charAt(pos) == '{') {
+                        pos = s.indexOf('}', pos) + 1;
+                    } else {
+                        pos++;
+                    }
+                    return CharSet.all();
+                default:
+                    return CharSet.all();
+            }
+        }
+
+        /**
+         * Parses what follows a backslash which stands for a single character.
+         */
+        private int escapedChar() {
+            int c = s.codePointAt(pos);
+            pos += Character.charCount(c);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'c':
+                    return s.charAt(pos++) ^ 64;
+                case '0': {
+                    int start = pos;
+                    while (pos < s.length() && pos - start < 3 && s.charAt(pos) >= '0' && s.charAt(pos) <= '7') {
+                        pos++;
+                    }
+                    return Integer.parseInt(s.substring(start, pos), 8);
+                }
+                case 'x':
+                    if (s.charAt(pos) == '{') {
+                        int close = s.indexOf('}', pos);
+                        int value = Integer.parseInt(s.substring(pos + 1, close), 16);
+                        pos = close + 1;
+                        return value;
+                    }
+                    pos += 2;
+                    return Integer.parseInt(s.substring(pos - 2, pos), 16);
+                case 'u':
+                    pos += 4;
+                    return Integer.parseInt(s.substring(pos - 4, pos), 16);
+                default:
+                    return c;
+            }
+        }
+
+        /**
+         * Parses a character class, after its opening bracket. Intersections
+         * are taken as unions, which can only make the set larger.
+         */
+        private CharSet charClass() {
+            boolean negated = false;
+            if (s.charAt(pos) == '^') {
+                negated = true;
+                pos++;
+            }
+            CharSet set = new CharSet();
+            boolean first = true;
+            while (s.charAt(pos) != ']' || first) {
+                first = false;
+                if (s.startsWith("&&", pos)) {
+                    pos += 2;
+                    continue;
+                }
+                int c = s.codePointAt(pos);
+                pos += Character.charCount(c);
+                if (c == '[') {
+                    set.addAll(charClass());
+                    continue;
+                }
+                int from = c;
+                if (c == '\\') {
+                    if (!isSingle(s.charAt(pos))) {
+                        set.addAll(classEscape());
+                        continue;
+                    }
+                    from = escapedChar();
+                }
+                if (s.charAt(pos) == '-' && s.charAt(pos + 1) != ']') {
+                    pos++;
+                    int to = s.codePointAt(pos);
+                    pos += Character.charCount(to);
+                    if (to == '\\') {
+                        to = escapedChar();
+                    }
+                    set.addRange(from, to);
+                } else {
+                    set.add(from);
+                }
+            }
+            pos++;
+            return negated ? set.complement() : set;
+        }
+
+        /**
+         * Whether the escape starting with {@code c} stands for a single character.
+         */
+        private static boolean isSingle(char c) {
+            return "dDwWsShHvVpPNRX".indexOf(c) < 0;
+        }
+
+        private void expect(char c) {
+            if (pos >= s.length() || s.charAt(pos) != c) {
+                throw new IllegalArgumentException("Expected " + c + " at " + pos);
+            }
+            pos++;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(RegexAnalyzer.class.getName());
+
+}
@@ -0,0 +1,80 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Rabin-Karp rolling hash and salted fingerprints shared by the
+ * {@link LiteralMatcher}s which do not keep the secrets themselves.
+ *
+ * <p>Each matcher draws its own random {@link #base}, so that the hashes it
+ * keeps cannot be compared with the ones of a known base, nor with the ones
+ * of another matcher.</p>
+ */
+final class RollingHash {
+
+    static final int FINGERPRINT_LENGTH = 16;
+    static final int SALT_LENGTH = 16;
+
+    private RollingHash() {
+    }
+
+    /**
+     * Returns a random odd base, odd so that no byte is ever multiplied out
+     * of the hash.
+     */
+    static long base() {
+        return new SecureRandom().nextLong() | 1;
+    }
+
+    static long hash(long base, byte[] b, int off, int len) {
+        long h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = h * base + (b[i] & 0xFF);
+        }
+        return h;
+    }
+
+    /**
+     * Returns {@code base^(length - 1)}, to roll the oldest byte of a window
+     * of {@code length} bytes out.
+     */
+    static long power(long base, int length) {
+        long p = 1;
+        for (int i = 1; i < length; i++) {
+            p *= base;
+        }
+        return p;
+    }
+
+    /**
+     * Moves a window hash one byte forward.
+     */
+    static long roll(long base, long h, long power, byte out, byte in) {
+        return (h - (out & 0xFF) * power) * base + (in & 0xFF);
+    }
+
+    static byte[] salt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Returns the first {@link #FINGERPRINT_LENGTH} bytes of the salted
+     * SHA-256 of {@code b[off, off + len)}.
+     */
+    static byte[] fingerprint(byte[] salt, byte[] b, int off, int len) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            md.update(b, off, len);
+            return Arrays.copyOf(md.digest(), FINGERPRINT_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * {@link LiteralMatcher} which does not keep the secrets themselves.
+ *
+ * <p>Secrets are bucketed by length. For each bucket, only a Rabin-Karp
+ * rolling hash and a 128-bit fingerprint (a salted, truncated SHA-256) of
+ * every secret are kept. Lines are scanned with one rolling window per
+ * distinct length, and a window whose rolling hash is known is confirmed by
+ * computing its fingerprint. Scanning state is thus proportional to the number
+ * of distinct secret lengths, and the plain text secrets can be discarded as
+ * soon as the matcher is built.</p>
+ */
+public final class RollingHashLiteralMatcher implements LiteralMatcher {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FINGERPRINT_LENGTH = RollingHash.FINGERPRINT_LENGTH;
+
+    private final byte[] salt;
+    /** Base of the rolling hashes, see {@link RollingHash#base}. */
+    private final long base;
+    /** Distinct secret lengths, ascending. */
+    private final int[] lengths;
+    /** {@code base^(length - 1)} for each length, to roll the oldest byte out. */
+    private final long[] powers;
+    /** Sorted rolling hashes of the secrets of each length. */
+    private final long[][] hashes;
+    /** Fingerprints of the secrets of each length, in the order of {@link #hashes}. */
+    private final byte[][] fingerprints;
+
+    private RollingHashLiteralMatcher(byte[] salt, long base, int[] lengths, long[][] hashes, byte[][] fingerprints) {
+        this.salt = salt;
+        this.base = base;
+        this.lengths = lengths;
+        this.hashes = hashes;
+        this.fingerprints = fingerprints;
+        this.powers = new long[lengths.length];
+        for (int k = 0; k < lengths.length; k++) {
+            powers[k] = RollingHash.power(base, lengths[k]);
+        }
+    }
+
+    /**
+     * Builds a matcher for the given secrets. Empty secrets are ignored.
+     */
+    public static RollingHashLiteralMatcher compile(Collection<byte[]> secrets) {
+        byte[] salt = RollingHash.salt();
+        long base = RollingHash.base();
+
+        TreeMap<Integer, List<byte[]>> byLength = new TreeMap<>();
+        for (byte[] secret : secrets) {
+            if (secret.length > 0) {
+                byLength.computeIfAbsent(secret.length, l -> new ArrayList<>()).add(secret);
+            }
+        }
+
+        int[] lengths = new int[byLength.size()];
+        long[][] hashes = new long[lengths.length][];
+        byte[][] fingerprints = new byte[lengths.length][];
+        int k = 0;
+        for (List<byte[]> bucket : byLength.values()) {
+            int n = bucket.size();
+            long[][] entries = new long[n][];
+            byte[][] entryFingerprints = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                byte[] secret = bucket.get(i);
+                entries[i] = new long[] {RollingHash.hash(base, secret, 0, secret.length), i};
+                entryFingerprints[i] = RollingHash.fingerprint(salt, secret, 0, secret.length);
+            }
+            Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+            lengths[k] = bucket.get(0).length;
+            hashes[k] = new long[n];
+            fingerprints[k] = new byte[n * FINGERPRINT_LENGTH];
+            for (int i = 0; i < n; i++) {
+                hashes[k][i] = entries[i][0];
+                System.arraycopy(entryFingerprints[(int) entries[i][1]], 0, fingerprints[k], i * FINGERPRINT_LENGTH, FINGERPRINT_LENGTH);
+            }
+            k++;
+        }
+        return new RollingHashLiteralMatcher(salt, base, lengths, hashes, fingerprints);
+    }
+
+    @Override
+    public void findAll(byte[] b, int off, int len, MaskSpans spans) {
+        int end = off + len;
+        for (int k = 0; k < lengths.length && lengths[k] <= len; k++) {
+            int length = lengths[k];
+            long pow = powers[k];
+            long[] bucket = hashes[k];
+            long h = RollingHash.hash(base, b, off, length);
+            for (int i = off; ; i++) {
+                if (Arrays.binarySearch(bucket, h) >= 0 && confirm(k, h, b, i, length)) {
+                    spans.add(i, i + length);
+                }
+                if (i + length >= end) {
+                    break;
+                }
+                h = RollingHash.roll(base, h, pow, b[i], b[i + length]);
+            }
+        }
+    }
+
+    @Override
+    public int maxLength() {
+        return lengths.length == 0 ? 0 : lengths[lengths.length - 1];
+    }
+
+    /**
+     * Returns the rolling hashes kept for the secrets of the given length.
+     */
+    long[] hashes(int length) {
+        int k = Arrays.binarySearch(lengths, length);
+        return k >= 0 ? hashes[k].clone() : new long[0];
+    }
+
+    /**
+     * Checks the fingerprint of a window whose rolling hash matched.
+     */
+    private boolean confirm(int k, long h, byte[] b, int start, int length) {
+        long[] bucket = hashes[k];
+        int i = Arrays.binarySearch(bucket, h);
+        while (i > 0 && bucket[i - 1] == h) {
+            i--;
+        }
+        byte[] actual = RollingHash.fingerprint(salt, b, start, length);
+        for (; i < bucket.length && bucket[i] == h; i++) {
+            int from = i * FINGERPRINT_LENGTH;
+            if (Arrays.equals(actual, 0, FINGERPRINT_LENGTH, fingerprints[k], from, from + FINGERPRINT_LENGTH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Finds the next occurrence of any of a few bytes, reading the buffer 8 bytes
+ * at a time with SWAR ("SIMD within a register") tricks.
+ *
+ * <p>For each byte {@code v} looked for, a word {@code x} holds {@code v} iff
+ * {@code y = x ^ broadcast(v)} has a zero byte, and
+ * {@code (y - 0x0101..01) & ~y & 0x8080..80} has its lowest set bit in the
+ * first such byte. Each byte looked for thus costs 4 operations per 8 bytes
+ * of input, which only pays off for a handful of them: see {@link #of}.</p>
+ *
+ * <p>The Vector API would process more bytes at a time, but is still
+ * incubating and needs a command line flag on both the controller and the
+ * agents.</p>
+ */
+public final class SwarByteScanner implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Above this, scanning byte by byte is as fast. */
+    public static final int MAX_BYTES = 6;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final long[] broadcasts;
+
+    private SwarByteScanner(long[] broadcasts) {
+        this.broadcasts = broadcasts;
+    }
+
+    /**
+     * Returns a scanner for the bytes set in {@code bytes}, a 256 entries
+     * table, or {@code null} if there are none or too many of them.
+     */
+    @CheckForNull
+    public static SwarByteScanner of(boolean[] bytes) {
+        long[] broadcasts = new long[MAX_BYTES];
+        int n = 0;
+        for (int c = 0; c < 256; c++) {
+            if (bytes[c]) {
+                if (n == MAX_BYTES) {
+                    return null;
+                }
+                broadcasts[n++] = ONES * c;
+            }
+        }
+        return n == 0 ? null : new SwarByteScanner(Arrays.copyOf(broadcasts, n));
+    }
+
+    /**
+     * Returns the index of the first of the bytes in {@code b[from, to)}, or
+     * {@code to} if there is none.
+     */
+    public int indexOf(byte[] b, int from, int to) {
+        long[] broadcasts = this.broadcasts;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long x = (long) LONGS.get(b, i);
+            long found = 0;
+            for (long v : broadcasts) {
+                long y = x ^ v;
+                found |= (y - ONES) & ~y & HIGHS;
+            }
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            for (long v : broadcasts) {
+                if (b[i] == (byte) v) {
+                    return i;
+                }
+            }
+        }
+        return to;
+    }
+
+}
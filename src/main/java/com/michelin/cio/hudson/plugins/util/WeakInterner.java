@@ -0,0 +1,79 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares immutable instances by key for as long as something uses them:
+ * instances are only weakly referenced, and their entry goes away once they
+ * are garbage collected.
+ *
+ * <p>Meant for compiled matchers, keyed by a fingerprint of what they were
+ * compiled from: concurrent builds masking the same secrets then share one
+ * matcher rather than holding a copy each.</p>
+ *
+ * @param <V> the instances shared, which must not change once interned
+ */
+public final class WeakInterner<V> {
+
+    private final Map<String, Entry<V>> entries = new HashMap<>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    /**
+     * Returns the instance interned for the given key, if still in use.
+     */
+    @CheckForNull
+    public synchronized V get(String key) {
+        expunge();
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.get() : null;
+    }
+
+    /**
+     * Interns {@code value} for the given key, unless another instance was
+     * meanwhile, in which case the latter is returned.
+     */
+    public synchronized V intern(String key, V value) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        entries.put(key, new Entry<>(key, value, queue));
+        return value;
+    }
+
+    /**
+     * Number of instances interned and still in use, as far as the garbage
+     * collector has told.
+     */
+    public synchronized int size() {
+        expunge();
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void expunge() {
+        for (Object reference = queue.poll(); reference != null; reference = queue.poll()) {
+            Entry<?> entry = (Entry<?>) reference;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private static final class Entry<V> extends WeakReference<V> {
+
+        final String key;
+
+        Entry(String key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+}
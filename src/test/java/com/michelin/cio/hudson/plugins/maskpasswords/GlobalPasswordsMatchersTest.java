@@ -0,0 +1,81 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.IncrementalLiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskSpans;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GlobalPasswordsMatchersTest {
+
+    @Test
+    void updatesWhatWasCompiled() {
+        List<String> passwords = List.of("s3cr3t", "p@ss");
+        LiteralMatcher compiled = MaskPasswordsOutputStream.compileLiterals(MaskPasswordsOutputStream.LiteralEngine.TRIE,
+                passwords, StandardCharsets.UTF_8);
+        GlobalPasswordsMatchers matchers = GlobalPasswordsMatchers.empty(MaskPasswordsOutputStream.LiteralEngine.TRIE)
+                .with(StandardCharsets.UTF_8, compiled);
+        assertSame(compiled, matchers.get(StandardCharsets.UTF_8));
+        assertNull(matchers.get(StandardCharsets.UTF_16));
+
+        GlobalPasswordsMatchers added = matchers.added("t0ken");
+        assertTrue(added.get(StandardCharsets.UTF_8) instanceof IncrementalLiteralMatcher);
+        assertEquals(3, count(added.get(StandardCharsets.UTF_8), "s3cr3t p@ss t0ken"));
+
+        // the configuration form clears them all, then adds back the ones kept
+        GlobalPasswordsMatchers cleared = added.cleared(() -> List.of("s3cr3t", "p@ss", "t0ken"));
+        assertTrue(cleared.isCleared());
+        assertNull(cleared.get(StandardCharsets.UTF_8));
+        assertNotSame(cleared, cleared.added("n3w"));
+        GlobalPasswordsMatchers reconciled = cleared.reconciled(List.of("p@ss", "t0ken", "n3w"));
+        assertFalse(reconciled.isCleared());
+        assertEquals(3, count(reconciled.get(StandardCharsets.UTF_8), "s3cr3t p@ss t0ken n3w"));
+
+        // compiled again as a whole
+        assertNull(reconciled.added("multi\nline").get(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compilesAgainOnceClearedWithTheEnginesKeepingNoPasswords() {
+        for (MaskPasswordsOutputStream.LiteralEngine engine : List.of(MaskPasswordsOutputStream.LiteralEngine.HASH,
+                MaskPasswordsOutputStream.LiteralEngine.BLOOM)) {
+            LiteralMatcher compiled = MaskPasswordsOutputStream.compileLiterals(engine, List.of("s3cr3t", "p@ss"),
+                    StandardCharsets.UTF_8);
+            GlobalPasswordsMatchers matchers = GlobalPasswordsMatchers.empty(engine).with(StandardCharsets.UTF_8, compiled);
+
+            GlobalPasswordsMatchers added = matchers.added("t0ken");
+            assertEquals(3, count(added.get(StandardCharsets.UTF_8), "s3cr3t p@ss t0ken"));
+
+            // the passwords cleared are not even read
+            GlobalPasswordsMatchers cleared = added.cleared(() -> {
+                throw new AssertionError();
+            });
+            assertFalse(cleared.isCleared());
+            assertNull(cleared.get(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void publishesEveryChange() {
+        GlobalPasswordsMatchers matchers = GlobalPasswordsMatchers.EMPTY;
+        assertNotSame(matchers, matchers.added("s3cr3t"));
+        assertNotSame(matchers, matchers.cleared(List::of));
+    }
+
+    private static int count(LiteralMatcher matcher, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 0, b.length, spans);
+        spans.normalize();
+        return spans.size();
+    }
+}
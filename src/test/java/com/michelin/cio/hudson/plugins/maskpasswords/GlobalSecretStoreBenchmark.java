@@ -0,0 +1,107 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsBuildWrapper.VarPasswordPair;
+import hudson.XmlFile;
+import hudson.util.Secret;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load time and footprint of the global name/password pairs, kept either in
+ * a single XML file of {@link Secret}s (as in {@code MaskPasswordsConfig.xml})
+ * or in a {@link GlobalSecretStore}.
+ */
+@JmhBenchmark
+public class GlobalSecretStoreBenchmark {
+
+    public static class StoreState extends JmhBenchmarkState {
+
+        @Param({"1000", "10000", "100000"})
+        public int secrets;
+
+        File storeDir;
+        XmlFile xmlFile;
+
+        @Override
+        public void setup() throws Exception {
+            File root = getJenkins().getRootDir();
+            storeDir = new File(root, "store-" + secrets);
+            xmlFile = new XmlFile(new File(root, "pairs-" + secrets + ".xml"));
+
+            GlobalSecretStore store = GlobalSecretStore.load(storeDir);
+            List<VarPasswordPair> pairs = new ArrayList<>(secrets);
+            for (int i = 0; i < secrets; i++) {
+                Secret secret = Secret.fromString("s3cr3t-" + Integer.toHexString(i * 0x9E3779B1));
+                pairs.add(new VarPasswordPair("VAR_" + i, secret));
+                store.add("VAR_" + i, secret);
+            }
+            xmlFile.write(pairs);
+            store.save();
+
+            System.out.printf("%n%d secrets: retained heap %,d bytes as Secrets, %,d bytes in GlobalSecretStore%n",
+                    secrets, retainedHeap(() -> xmlFile.read()), retainedHeap(() -> {
+                        GlobalSecretStore s = GlobalSecretStore.load(storeDir);
+                        s.getPlainTexts();
+                        return s;
+                    }));
+        }
+    }
+
+    /**
+     * What every build did so far: read the pairs and decrypt each of them.
+     */
+    @Benchmark
+    public void xmlFile(StoreState state, Blackhole blackhole) throws Exception {
+        @SuppressWarnings("unchecked")
+        List<VarPasswordPair> pairs = (List<VarPasswordPair>) state.xmlFile.read();
+        for (VarPasswordPair pair : pairs) {
+            blackhole.consume(pair.getPlainTextPassword());
+        }
+    }
+
+    /**
+     * Load the shards only, as at startup: the passwords are decrypted when
+     * first needed.
+     */
+    @Benchmark
+    public void secretStoreLoad(StoreState state, Blackhole blackhole) {
+        blackhole.consume(GlobalSecretStore.load(state.storeDir));
+    }
+
+    /**
+     * Load the shards and decrypt them into a packed table.
+     */
+    @Benchmark
+    public void secretStore(StoreState state, Blackhole blackhole) {
+        blackhole.consume(GlobalSecretStore.load(state.storeDir).getPlainTexts());
+    }
+
+    private interface Loader {
+        Object load() throws Exception;
+    }
+
+    private static long retainedHeap(Loader loader) throws Exception {
+        long before = usedHeap();
+        Object loaded = loader.load();
+        long after = usedHeap();
+        Reference.reachabilityFence(loaded);
+        return after - before;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
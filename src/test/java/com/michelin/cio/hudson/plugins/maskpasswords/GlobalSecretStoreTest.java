@@ -0,0 +1,108 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import hudson.XmlFile;
+import hudson.util.Secret;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class GlobalSecretStoreTest {
+
+    private static final int COUNT = 2 * GlobalSecretStore.SHARD_SIZE + 10;
+
+    private File dir;
+
+    @BeforeEach
+    void setUp(JenkinsRule j) {
+        dir = new File(j.jenkins.getRootDir(), GlobalSecretStore.DIRECTORY);
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        GlobalSecretStore store = GlobalSecretStore.load(dir);
+        List<String> expected = fill(store, "s3cr3t");
+        store.save();
+
+        assertTrue(new File(dir, "secrets-2.xml").exists());
+        assertFalse(new File(dir, "secrets-3.xml").exists());
+        assertEquals(3, dir.list().length);
+
+        GlobalSecretStore loaded = GlobalSecretStore.load(dir);
+        assertEquals(COUNT, loaded.size());
+        assertEquals(expected, loaded.getPlainTexts());
+        assertEquals("VAR_42", loaded.getPairs().get(42).getVar());
+        assertEquals("s3cr3t-42", loaded.getPairs().get(42).getPlainTextPassword());
+    }
+
+    @Test
+    void unchangedShardsAreNotRewritten() throws Exception {
+        GlobalSecretStore store = GlobalSecretStore.load(dir);
+        fill(store, "s3cr3t");
+        store.save();
+        byte[] first = Files.readAllBytes(new File(dir, "secrets-0.xml").toPath());
+        byte[] last = Files.readAllBytes(new File(dir, "secrets-2.xml").toPath());
+
+        // what the global configuration form does on every save
+        GlobalSecretStore loaded = GlobalSecretStore.load(dir);
+        loaded.clear();
+        for (int i = 0; i < COUNT; i++) {
+            String value = i == COUNT - 1 ? "changed" : "s3cr3t-" + i;
+            loaded.add("VAR_" + i, Secret.fromString(value));
+        }
+        loaded.save();
+
+        assertArrayEquals(first, Files.readAllBytes(new File(dir, "secrets-0.xml").toPath()));
+        assertFalse(Arrays.equals(last, Files.readAllBytes(new File(dir, "secrets-2.xml").toPath())));
+        assertEquals("changed", GlobalSecretStore.load(dir).getPlainTexts().get(COUNT - 1));
+    }
+
+    @Test
+    void undecryptablePasswordsAreSkipped() throws Exception {
+        new XmlFile(new File(dir, "secrets-0.xml")).write(new GlobalSecretStore.Shard(
+                new String[] {"GOOD", "BAD"},
+                new String[] {Secret.fromString("good").getEncryptedValue(), "{invalid}"}));
+
+        GlobalSecretStore loaded = GlobalSecretStore.load(dir);
+        assertEquals(List.of("good"), loaded.getPlainTexts());
+        assertEquals(1, loaded.getPairs().size());
+        assertEquals("GOOD", loaded.getPairs().get(0).getVar());
+    }
+
+    @Test
+    void shrinkingDeletesExtraShards() throws Exception {
+        GlobalSecretStore store = GlobalSecretStore.load(dir);
+        fill(store, "s3cr3t");
+        store.save();
+
+        store.clear();
+        store.add("ONLY", Secret.fromString("remaining"));
+        store.save();
+
+        assertTrue(new File(dir, "secrets-0.xml").exists());
+        assertFalse(new File(dir, "secrets-1.xml").exists());
+        assertEquals(List.of("remaining"), GlobalSecretStore.load(dir).getPlainTexts());
+    }
+
+    private static List<String> fill(GlobalSecretStore store, String prefix) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            String value = prefix + "-" + i;
+            store.add("VAR_" + i, Secret.fromString(value));
+            values.add(value);
+        }
+        return values;
+    }
+}
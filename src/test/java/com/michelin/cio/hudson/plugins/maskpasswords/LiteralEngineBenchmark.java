@@ -0,0 +1,87 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.LiteralEngine;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time to mask a typical chunk of console output with each
+ * {@link LiteralEngine}, depending on the number of passwords.
+ */
+@JmhBenchmark
+public class LiteralEngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class EngineState {
+
+        @Param({"1", "10", "100", "1000", "10000", "50000"})
+        public int secrets;
+
+        @Param({"REGEX", "TRIE", "HASH", "BLOOM"})
+        public LiteralEngine engine;
+
+        List<String> passwords;
+        LiteralMatcher matcher;
+        byte[] log;
+
+        @Setup
+        public void setup() {
+            passwords = passwords(secrets);
+            matcher = MaskPasswordsOutputStream.compileLiterals(engine, passwords);
+            log = log(passwords);
+        }
+    }
+
+    /**
+     * Builds the stream, as is done for every build, and masks 400 lines of
+     * about 100 bytes, a few of them containing a password.
+     */
+    @Benchmark
+    public void mask(EngineState state) throws IOException {
+        try (MaskPasswordsOutputStream out = new MaskPasswordsOutputStream(OutputStream.nullOutputStream(), state.matcher,
+                state.matcher == null ? state.passwords : null, null, "benchmark")) {
+            out.write(state.log);
+        }
+    }
+
+    static List<String> passwords(int count) {
+        Random random = new Random(42);
+        List<String> passwords = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // mix of lengths, as with real tokens and passwords
+            int length = 8 + random.nextInt(33);
+            StringBuilder sb = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('!' + random.nextInt(94)));
+            }
+            passwords.add(sb.toString());
+        }
+        return passwords;
+    }
+
+    static byte[] log(List<String> passwords) {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            sb.append("[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/example/artifact-")
+                    .append(i).append(".jar");
+            if (i % 50 == 0) {
+                sb.append(" token=").append(passwords.get(random.nextInt(passwords.size())));
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -23,12 +23,20 @@
  */
 package com.michelin.cio.hudson.plugins.maskpasswords;
 
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsBuildWrapper.VarPasswordPair;
+import com.michelin.cio.hudson.plugins.util.LiteralMatcher;
+import com.michelin.cio.hudson.plugins.util.MaskSpans;
+import hudson.util.Secret;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -87,6 +95,35 @@ class MaskPasswordConfigTests {
         assertIsNotMasked(loaded, hudson.model.FileParameterValue.class);
     }
 
+    @Test
+    void shouldCompileGlobalPasswordsOnSave(JenkinsRule j) throws Exception {
+        MaskPasswordsConfig instance = MaskPasswordsConfig.getInstance();
+        instance.addGlobalVarPasswordPair(new VarPasswordPair("key", Secret.fromString("s3cr3t")));
+        if (MaskPasswordsOutputStream.LITERAL_ENGINE == MaskPasswordsOutputStream.LiteralEngine.REGEX) {
+            // matched as a regex, nothing to compile ahead
+            MaskPasswordsConfig.save(instance);
+            assertNull(instance.getGlobalPasswordsMatcher(Charset.defaultCharset()));
+            return;
+        }
+        long prewarms = MaskingMetrics.get().getPrewarms();
+        MaskPasswordsConfig.save(instance);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (MaskingMetrics.get().getPrewarms() == prewarms) {
+            assertTrue(System.currentTimeMillis() < deadline, "Expected the global passwords to be compiled");
+            Thread.sleep(10);
+        }
+
+        long hits = MaskingMetrics.get().getMatcherCacheHits();
+        long misses = MaskingMetrics.get().getMatcherCacheMisses();
+        LiteralMatcher matcher = instance.getGlobalPasswordsMatcher(Charset.defaultCharset());
+        assertEquals(hits + 1, MaskingMetrics.get().getMatcherCacheHits());
+        assertEquals(misses, MaskingMetrics.get().getMatcherCacheMisses());
+        byte[] line = "the s3cr3t".getBytes(Charset.defaultCharset());
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(line, 0, line.length, spans);
+        assertEquals(1, spans.size());
+    }
+
     private static void assertIsMasked(Class<?> clazz) {
         MaskPasswordsConfig instance = MaskPasswordsConfig.getInstance();
         assertIsMasked(instance, clazz);
@@ -148,6 +148,23 @@ class MaskPasswordsWorkflowTest {
         }
     }
 
+    @Test
+    void globalPasswordsAreNotSaved(JenkinsRule j) throws Throwable {
+        MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+        config.addGlobalVarPasswordPair(new MaskPasswordsBuildWrapper.VarPasswordPair("GLOBAL", Secret.fromString("gl0bal")));
+        MaskPasswordsConfig.save(config);
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {wrap([$class: 'MaskPasswordsBuildWrapper']) {semaphore 'waiting'; echo 'printed gl' + '0bal oops'}}", true));
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("waiting/1", b);
+        // looked up again when the filter is used, rather than saved with it
+        assertEquals(Collections.emptySet(), grep(b.getRootDir(), "gl0bal"));
+        SemaphoreStep.success("waiting/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+        j.assertLogContains("printed ******** oops", b);
+        j.assertLogNotContains("gl0bal", b);
+    }
+
     @Test
     void noWorkspaceRequired(JenkinsRule j) throws Exception {
         WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
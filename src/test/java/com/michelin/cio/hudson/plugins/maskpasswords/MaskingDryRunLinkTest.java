@@ -0,0 +1,69 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.htmlunit.html.HtmlForm;
+import org.htmlunit.html.HtmlPage;
+import org.htmlunit.util.NameValuePair;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class MaskingDryRunLinkTest {
+
+    @Test
+    void runsFromTheForm(JenkinsRule j) throws Exception {
+        HtmlPage page = j.createWebClient().goTo("maskPasswordsDryRun");
+        HtmlForm form = page.getFormByName("run");
+        form.getTextAreaByName("log").setText("login with s3cr3t\ntoken=abc\n");
+        form.getTextAreaByName("passwords").setText("s3cr3t");
+        form.getTextAreaByName("regexes").setText("token=(\\w+)");
+        page = j.submit(form);
+        String text = page.asNormalizedText();
+        assertTrue(text.contains("login with ********"), text);
+        assertTrue(text.contains("token=********"), text);
+        assertFalse(text.contains("s3cr3t"), text);
+    }
+
+    @Test
+    void runsFromRest(JenkinsRule j) throws Exception {
+        MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+        config.addGlobalVarMaskRegex("KEY", "key=(\\w+)");
+        MaskPasswordsConfig.save(config);
+
+        JenkinsRule.WebClient wc = j.createWebClient();
+        WebRequest request = new WebRequest(new URL(j.getURL(), "maskPasswordsDryRun/runJson"), HttpMethod.POST);
+        request.setRequestParameters(List.of(
+                new NameValuePair("log", "token=abc key=def\n"),
+                new NameValuePair("regexes", "token=(\\w+)"),
+                new NameValuePair("engine", "REGEX"),
+                new NameValuePair("global", "true")));
+        wc.addCrumb(request);
+        JSONObject json = JSONObject.fromObject(wc.getPage(request).getWebResponse().getContentAsString());
+        assertEquals("ok", json.getString("status"), json.toString());
+        JSONObject data = json.getJSONObject("data");
+        assertEquals("token=******** key=********\n", data.getString("masked"));
+        assertEquals(2, data.getInt("spanCount"));
+        assertEquals(2, data.getJSONArray("patterns").size());
+        assertEquals("key=(\\w+)", data.getJSONArray("spans").getJSONObject(1).getString("source"));
+    }
+
+    @Test
+    void rejectsInvalidRegexes(JenkinsRule j) throws Exception {
+        JenkinsRule.WebClient wc = j.createWebClient();
+        WebRequest request = new WebRequest(new URL(j.getURL(), "maskPasswordsDryRun/runJson"), HttpMethod.POST);
+        request.setRequestParameters(List.of(new NameValuePair("log", "x\n"), new NameValuePair("regexes", "token=(")));
+        wc.addCrumb(request);
+        JSONObject json = JSONObject.fromObject(wc.getPage(request).getWebResponse().getContentAsString());
+        assertEquals("error", json.getString("status"), json.toString());
+    }
+}
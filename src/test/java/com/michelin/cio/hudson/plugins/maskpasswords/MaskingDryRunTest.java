@@ -0,0 +1,63 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.maskpasswords.MaskPasswordsOutputStream.LiteralEngine;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaskingDryRunTest {
+
+    private static final String LOG = "login with s3cr3t\n" + "token=abc and again abc\n" + "nothing to see\n";
+
+    @Test
+    void masksLikeBuilds() throws IOException {
+        for (LiteralEngine engine : LiteralEngine.values()) {
+            MaskingDryRun.Result result = new MaskingDryRun(engine, List.of("s3cr3t"), List.of("token=(\\w+)"), StandardCharsets.UTF_8).run(LOG);
+            assertEquals("login with ********\n" + "token=******** and again ********\n" + "nothing to see\n", result.getMasked(), engine.name());
+            assertEquals(3, result.getLines());
+            assertEquals(LOG.length(), result.getBytes());
+            assertEquals(List.of("1:[11,17) password", "2:[6,9) token=(\\w+)", "2:[20,23) token=(\\w+)"),
+                    result.getSpans().stream().map(Object::toString).toList(), engine.name());
+            assertEquals(3, result.getSpanCount());
+            assertEquals(1, result.getPatterns().size());
+            assertEquals(1, result.getPatterns().get(0).getMatches());
+            assertTrue(result.getMaskingNanos() > 0);
+            assertTrue(result.getMegabytesPerSecond() > 0);
+        }
+    }
+
+    @Test
+    void countsLinesWithoutTrailingNewline() throws IOException {
+        assertEquals(0, new MaskingDryRun(LiteralEngine.TRIE, List.of(), List.of(), StandardCharsets.UTF_8).run("").getLines());
+        MaskingDryRun.Result result = new MaskingDryRun(LiteralEngine.TRIE, List.of("pé"), List.of(), StandardCharsets.UTF_8).run("a\nb pé");
+        assertEquals(2, result.getLines());
+        assertEquals("a\nb ********", result.getMasked());
+        assertEquals(List.of("2:[2,4) password"), result.getSpans().stream().map(Object::toString).toList());
+    }
+
+    @Test
+    void isNotAccountedFor() throws IOException {
+        MaskingMetrics metrics = MaskingMetrics.get();
+        long lines = metrics.getLines();
+        long compilations = metrics.getCompilations();
+        int active = metrics.getActiveStreams();
+
+        MaskingDryRun.Result result = new MaskingDryRun(LiteralEngine.TRIE, List.of("dry-s3cr3t"), List.of("dry=(\\w+)"), StandardCharsets.UTF_8).run(LOG);
+        assertEquals(3, result.getLines());
+        assertEquals(lines, metrics.getLines());
+        assertEquals(compilations, metrics.getCompilations());
+        assertEquals(active, metrics.getActiveStreams());
+    }
+
+    @Test
+    void masksInTheGivenCharset() throws IOException {
+        MaskingDryRun.Result result = new MaskingDryRun(LiteralEngine.TRIE, List.of("pé"), List.of(), StandardCharsets.ISO_8859_1).run("pé pè\n");
+        assertEquals("******** pè\n", result.getMasked());
+        assertEquals(List.of("1:[0,2) password"), result.getSpans().stream().map(Object::toString).toList());
+    }
+}
@@ -0,0 +1,70 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import com.michelin.cio.hudson.plugins.util.PatternProfiler;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.htmlunit.html.HtmlPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class MaskingProfilerLinkTest {
+
+    private int sampleRate;
+
+    @BeforeEach
+    void enableProfiling() {
+        sampleRate = PatternProfiler.SAMPLE_RATE;
+        PatternProfiler.SAMPLE_RATE = 1;
+        PatternProfiler.reset();
+    }
+
+    @AfterEach
+    void restoreProfiling() {
+        PatternProfiler.SAMPLE_RATE = sampleRate;
+    }
+
+    @Test
+    void ranksGlobalRegexes(JenkinsRule j) throws Exception {
+        MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+        config.setGlobalVarEnabledGlobally(true);
+        config.addGlobalVarMaskRegex("TOKEN", "token=(\\w+)");
+        MaskPasswordsConfig.save(config);
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildWrappersList().add(new MaskPasswordsBuildWrapper(List.of(),
+                List.of(new MaskPasswordsConfig.VarMaskRegexEntry("JOB_KEY", "key=(\\w+)"))));
+        p.getBuildersList().add(new TestBuilder() {
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                listener.getLogger().println("printed token=abc key=def oops");
+                return true;
+            }
+        });
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("printed token=******** key=******** oops", b);
+
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        JenkinsRule.WebClient wc = j.createWebClient().login("admin");
+        HtmlPage page = wc.goTo("maskPasswordsProfiler");
+        assertTrue(page.asNormalizedText().contains("TOKEN"), page.asNormalizedText());
+        assertTrue(page.asNormalizedText().contains("token=(\\w+)"), page.asNormalizedText());
+        // regexes defined in jobs are named too
+        assertTrue(page.asNormalizedText().contains("JOB_KEY"), page.asNormalizedText());
+
+        page = j.submit(page.getFormByName("reset"));
+        assertFalse(page.asNormalizedText().contains("token=(\\w+)"), page.asNormalizedText());
+    }
+}
@@ -0,0 +1,45 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import hudson.XmlFile;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class MaskingStatisticsActionTest {
+
+    @Test
+    void statisticsAreRecordedAndExported(JenkinsRule j) throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("wrap([$class: 'MaskPasswordsBuildWrapper', varPasswordPairs: [[var: 'PASSWORD', password: 's3cr3t']], varMaskRegexes: [[key: 'TOKEN', value: 'token=(\\\\w+)']]]) {echo 'printed s3cr3t oops'; echo 'token=abc'; echo 'nothing to see'}", true));
+        WorkflowRun b = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        j.assertLogContains("printed ******** oops", b);
+
+        MaskingStatisticsAction action = b.getAction(MaskingStatisticsAction.class);
+        assertNotNull(action);
+        MaskingStatistics statistics = action.getStatistics();
+        assertTrue(statistics.getLines() >= 3, "lines: " + statistics.getLines());
+        assertTrue(statistics.getMaskedLines() >= 2, "masked lines: " + statistics.getMaskedLines());
+        assertTrue(statistics.getLiteralMatches() >= 1, "literal matches: " + statistics.getLiteralMatches());
+        assertTrue(statistics.getRegexMatches() >= 1, "regex matches: " + statistics.getRegexMatches());
+
+        String json = j.createWebClient().goTo(b.getUrl() + "api/json?depth=1", "application/json").getWebResponse().getContentAsString();
+        assertTrue(json.contains("\"maskedLines\""), json);
+        // saved once finalized
+        j.waitForCompletion(b);
+        String xml = new XmlFile(new File(b.getRootDir(), "build.xml")).asString();
+        assertTrue(xml.contains("MaskingStatisticsAction"), xml);
+        assertTrue(xml.contains("<lines>" + statistics.getLines() + "</lines>"), xml);
+
+        // renders the summary on the build page
+        j.createWebClient().getPage(b);
+    }
+}
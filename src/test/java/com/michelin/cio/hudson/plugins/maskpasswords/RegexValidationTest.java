@@ -0,0 +1,66 @@
+package com.michelin.cio.hudson.plugins.maskpasswords;
+
+import hudson.model.FreeStyleProject;
+import hudson.util.FormValidation;
+import org.htmlunit.html.DomElement;
+import org.htmlunit.html.HtmlPage;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class RegexValidationTest {
+
+    @Test
+    void checksRegexes(JenkinsRule j) {
+        MaskPasswordsBuildWrapper.DescriptorImpl descriptor = j.jenkins.getDescriptorByType(MaskPasswordsBuildWrapper.DescriptorImpl.class);
+
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckValue(null, "").kind);
+
+        // only the regexes found something about are measured
+        FormValidation ok = descriptor.doCheckValue(null, "token=(\\w+)");
+        assertEquals(FormValidation.Kind.OK, ok.kind);
+        assertNull(ok.getMessage());
+
+        FormValidation invalid = descriptor.doCheckValue(null, "token=(\\w+");
+        assertEquals(FormValidation.Kind.ERROR, invalid.kind);
+
+        FormValidation nested = descriptor.doCheckValue(null, "(\\w+\\s?)+:");
+        assertEquals(FormValidation.Kind.WARNING, nested.kind);
+        assertTrue(nested.renderHtml().contains("Nested quantifiers"), nested.renderHtml());
+        assertTrue(nested.renderHtml().contains("MB/s"), nested.renderHtml());
+    }
+
+    @Test
+    void checksRegexesFromTheForms(JenkinsRule j) throws Exception {
+        MaskPasswordsConfig config = MaskPasswordsConfig.getInstance();
+        config.addGlobalVarMaskRegex("GLOBAL", "global=(\\w+)");
+        MaskPasswordsConfig.save(config);
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildWrappersList().add(new MaskPasswordsBuildWrapper(List.of(),
+                List.of(new MaskPasswordsConfig.VarMaskRegexEntry("JOB", "job=(\\w+)"))));
+
+        JenkinsRule.WebClient wc = j.createWebClient();
+        for (HtmlPage page : List.of(wc.getPage(p, "configure"), wc.goTo("configure"))) {
+            List<DomElement> inputs = page.getElementsByName("_.value");
+            assertFalse(inputs.isEmpty());
+            for (DomElement input : inputs) {
+                // the check methods only answer POST requests
+                assertEquals("post", input.getAttribute("checkMethod"));
+            }
+        }
+
+        p = j.configRoundtrip(p);
+        j.configRoundtrip();
+        assertEquals("job=(\\w+)", p.getBuildWrappersList().get(MaskPasswordsBuildWrapper.class)
+                .getVarMaskRegexes().get(0).getRegexString());
+        assertEquals("global=(\\w+)", MaskPasswordsConfig.getInstance().getGlobalVarMaskRegexesU().get(0).getRegexString());
+    }
+}
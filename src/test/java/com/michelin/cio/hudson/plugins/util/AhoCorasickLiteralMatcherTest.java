@@ -0,0 +1,104 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AhoCorasickLiteralMatcherTest {
+
+    @Test
+    void findsEveryOccurrence() {
+        LiteralMatcher matcher = compile("s3cr3t", "abc", "bcd", "abc");
+        assertEquals("[0,6) [10,16)", find(matcher, "s3cr3t is s3cr3t"));
+        assertEquals("[1,5)", find(matcher, "xabcd"));
+        assertEquals(6, matcher.maxLength());
+    }
+
+    @Test
+    void followsFailureLinks() {
+        LiteralMatcher matcher = compile("he", "she", "his", "hers", "x");
+        assertEquals("[1,6)", find(matcher, "ushers"));
+        assertEquals("[0,3) [5,6)", find(matcher, "hisshx"));
+        assertEquals("[1,4)", find(compile("aab", "ab"), "aaab"));
+    }
+
+    @Test
+    void ignoresLookAlikes() {
+        LiteralMatcher matcher = compile("s3cr3t");
+        assertEquals("", find(matcher, "s3cr3 S3CR3T s3cr4t 3cr3t"));
+        assertEquals("", find(matcher, "s3cr"));
+        assertEquals("", find(compile(), "anything"));
+    }
+
+    @Test
+    void matchesAnyByte() {
+        byte[] secret = {(byte) 0xFF, 0, (byte) 0x80, (byte) 0xC3};
+        LiteralMatcher matcher = AhoCorasickLiteralMatcher.compile(List.of(secret));
+        byte[] line = {0, (byte) 0xFF, (byte) 0xFF, 0, (byte) 0x80, (byte) 0xC3, (byte) 0xFF};
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(line, 0, line.length, spans);
+        assertEquals("[2,6)", RollingHashLiteralMatcherTest.toString(spans));
+    }
+
+    @Test
+    void agreesWithNaiveSearch() {
+        Random random = new Random(42);
+        List<String> secrets = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            secrets.add(randomString(random, 1 + random.nextInt(6)));
+        }
+        LiteralMatcher matcher = compile(secrets.toArray(new String[0]));
+        for (int i = 0; i < 200; i++) {
+            String line = randomString(random, 80);
+            MaskSpans expected = new MaskSpans();
+            for (String secret : secrets) {
+                for (int at = line.indexOf(secret); at >= 0; at = line.indexOf(secret, at + 1)) {
+                    expected.add(at, at + secret.length());
+                }
+            }
+            expected.normalize();
+            assertEquals(RollingHashLiteralMatcherTest.toString(expected), find(matcher, line));
+        }
+    }
+
+    @Test
+    void resumesAcrossBuffers() {
+        AhoCorasickLiteralMatcher matcher = (AhoCorasickLiteralMatcher) compile("ab\ncd", "x");
+        byte[] b = "zzab\ncdzz".getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        int state = matcher.findAll(b, 0, 5, AhoCorasickLiteralMatcher.ROOT, spans);
+        assertEquals(3, matcher.depth(state));
+        state = matcher.findAll(b, 5, 4, state, spans);
+        assertEquals(0, matcher.depth(state));
+        assertEquals("[2,7)", RollingHashLiteralMatcherTest.toString(spans));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static LiteralMatcher compile(String... secrets) {
+        List<byte[]> literals = new ArrayList<>();
+        for (String secret : secrets) {
+            literals.add(secret.getBytes(StandardCharsets.UTF_8));
+        }
+        return AhoCorasickLiteralMatcher.compile(literals);
+    }
+
+    private static String find(LiteralMatcher matcher, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 0, b.length, spans);
+        spans.normalize();
+        return RollingHashLiteralMatcherTest.toString(spans);
+    }
+}
@@ -0,0 +1,74 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnsiTextTest {
+
+    private static final String RED = "\u001B[31m";
+    private static final String RESET = "\u001B[0m";
+    private static final String TITLE = "\u001B]0;title\u0007";
+
+    @Test
+    void skipsEscapeSequences() {
+        AnsiText text = new AnsiText(RED + "s3" + RESET + TITLE + "cr3t" + "\u001B(" + "!" + RESET);
+        assertEquals("s3cr3t!", text.toString());
+        assertEquals(7, text.length());
+        assertEquals('c', text.charAt(2));
+        assertEquals(5 + 2 + 4 + 10, text.rawIndex(2));
+        assertEquals("cr3", text.subSequence(2, 5).toString());
+        // backwards, as a regex may read
+        assertEquals('s', text.charAt(0));
+
+        assertEquals("", new AnsiText(RED + RESET).toString());
+        assertEquals("plain", new AnsiText("plain").toString());
+        // unterminated
+        assertEquals("ab", new AnsiText("ab\u001B[3").toString());
+    }
+
+    @Test
+    void matchesRegexes() {
+        AnsiText text = new AnsiText("token=" + RED + "abc" + RESET + "12 done");
+        Matcher m = Pattern.compile("token=(\\w+)").matcher(text);
+        assertTrue(m.find());
+        assertEquals("abc12", m.group(1));
+        assertFalse(m.find());
+    }
+
+    @Test
+    void masksAroundEscapeSequences() {
+        String line = "a s3" + RED + "cr3t" + RESET + " and s3cr3t";
+        AnsiText text = new AnsiText(line);
+        MaskSpans spans = new MaskSpans();
+        text.find(List.of("s3cr3t"), spans);
+        spans.normalize();
+        assertEquals(2, spans.size());
+        assertEquals("a ***" + RED + RESET + " and ***", text.mask(spans, "***", null));
+        assertEquals("a **" + RED + "****" + RESET + " and ******", text.mask(spans, "***", StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void masksVisibleBytes() {
+        byte[] line = ("a s3" + RED + "cr3t" + RESET + "!").getBytes(StandardCharsets.UTF_8);
+        byte[] visible = new byte[line.length];
+        int[] offsets = new int[line.length];
+        int n = AnsiText.visibleBytes(line, line.length, visible, offsets);
+        assertEquals("a s3cr3t!", new String(visible, 0, n, StandardCharsets.UTF_8));
+        assertTrue(AnsiText.hasEscape(line, 0, line.length));
+        assertFalse(AnsiText.hasEscape(visible, 0, n));
+
+        MaskSpans spans = new MaskSpans();
+        spans.add(2, 8);
+        byte[] masked = AnsiText.mask(line, line.length, offsets, spans, "***".getBytes(StandardCharsets.UTF_8));
+        assertEquals("a ***" + RED + RESET + "!", new String(masked, StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDetectorTest {
+
+    @Test
+    void acceptsText() {
+        assertFalse(isBinary("plain text\n", true));
+        assertFalse(isBinary("\u00e9t\u00e9 \u79d8\u5bc6 \uD83D\uDE00\n", true));
+        assertFalse(isBinary("\u001B[31mred\u001B[0m\tand a bell\u0007\r\n", true));
+        // a few control characters, whatever the length
+        assertFalse(isBinary("\u0001\u0002\u0003\u0004", true));
+        assertFalse(isBinary("", true));
+    }
+
+    @Test
+    void detectsBinary() {
+        assertTrue(isBinary("text with a \u0000 byte", true));
+        assertTrue(isBinary("\u0001\u0002\u0003\u0004\u0005", true));
+
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        for (int i = 0; i < random.length; i++) {
+            // no NUL, which is enough on its own
+            random[i] |= 1;
+        }
+        assertTrue(BinaryDetector.isBinary(random, 0, random.length, true));
+    }
+
+    @Test
+    void detectsInvalidUtf8() {
+        byte[] latin1 = "\u00e9\u00e8\u00e0\u00e7\u00f9".getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(BinaryDetector.isBinary(latin1, 0, latin1.length, true));
+        // not in another charset, where any byte may be text
+        assertFalse(BinaryDetector.isBinary(latin1, 0, latin1.length, false));
+        // nor when cut by a partial write
+        byte[] cut = "abc\u00e9".getBytes(StandardCharsets.UTF_8);
+        assertFalse(BinaryDetector.isBinary(cut, 0, cut.length - 1, true));
+    }
+
+    private static boolean isBinary(String s, boolean utf8) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return BinaryDetector.isBinary(b, 0, b.length, utf8);
+    }
+
+}
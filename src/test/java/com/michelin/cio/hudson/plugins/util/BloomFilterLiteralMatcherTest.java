@@ -0,0 +1,60 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterLiteralMatcherTest {
+
+    @Test
+    void findsEveryOccurrence() {
+        LiteralMatcher matcher = compile("s3cr3t", "abc", "bcd", "abc");
+        assertEquals("[0,6) [10,16)", find(matcher, "s3cr3t is s3cr3t"));
+        assertEquals("[1,5)", find(matcher, "xabcd"));
+        assertEquals(6, matcher.maxLength());
+    }
+
+    @Test
+    void ignoresLookAlikes() {
+        LiteralMatcher matcher = compile("s3cr3t");
+        assertEquals("", find(matcher, "s3cr3 S3CR3T s3cr4t 3cr3t"));
+        assertEquals("", find(matcher, "s3cr"));
+        assertEquals("", find(compile(), "anything"));
+    }
+
+    @Test
+    void handlesLargeSets() {
+        List<byte[]> secrets = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            secrets.add(("tok-" + Integer.toHexString(i * 0x9E3779B1)).getBytes(StandardCharsets.UTF_8));
+        }
+        BloomFilterLiteralMatcher matcher = BloomFilterLiteralMatcher.compile(secrets);
+        assertTrue(matcher.filterSize() <= 4 * secrets.size());
+
+        String last = "tok-" + Integer.toHexString(49_999 * 0x9E3779B1);
+        String line = "[tok-0] tok-zz " + last + " tok-" + Integer.toHexString(50_000 * 0x9E3779B1);
+        int at = line.indexOf(last);
+        assertEquals("[1,6) [" + at + "," + (at + last.length()) + ")", find(matcher, line));
+    }
+
+    private static LiteralMatcher compile(String... secrets) {
+        List<byte[]> literals = new ArrayList<>();
+        for (String secret : secrets) {
+            literals.add(secret.getBytes(StandardCharsets.UTF_8));
+        }
+        return BloomFilterLiteralMatcher.compile(literals);
+    }
+
+    private static String find(LiteralMatcher matcher, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 0, b.length, spans);
+        spans.normalize();
+        return RollingHashLiteralMatcherTest.toString(spans);
+    }
+}
@@ -0,0 +1,104 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncrementalLiteralMatcherTest {
+
+    @Test
+    void addsAndRemovesSecrets() {
+        LiteralMatcher base = AhoCorasickLiteralMatcher.compile(bytes("s3cr3t", "p@ss"));
+        IncrementalLiteralMatcher matcher = IncrementalLiteralMatcher.update(base, bytes("t0ken", "p@ss"), bytes(),
+                AhoCorasickLiteralMatcher::compile);
+        // p@ss was there already
+        assertEquals(1, matcher.changes());
+        assertEquals("[0,6) [7,11) [12,17)", find(matcher, "s3cr3t p@ss t0ken"));
+
+        matcher = IncrementalLiteralMatcher.update(matcher, bytes(), bytes("s3cr3t", "t0ken", "unknown"),
+                AhoCorasickLiteralMatcher::compile);
+        assertEquals(3, matcher.changes());
+        assertEquals("[7,11)", find(matcher, "s3cr3t p@ss t0ken"));
+
+        // added back
+        matcher = IncrementalLiteralMatcher.update(matcher, bytes("s3cr3t", "t0ken"), bytes(),
+                AhoCorasickLiteralMatcher::compile);
+        assertEquals(1, matcher.changes());
+        assertEquals("[0,6) [7,11) [12,17)", find(matcher, "s3cr3t p@ss t0ken"));
+    }
+
+    @Test
+    void keepsTheSecretsWithinARemovedOne() {
+        // a matcher may only report the longest secret ending at a byte
+        LiteralMatcher base = AhoCorasickLiteralMatcher.compile(bytes("long-s3cr3t", "s3cr3t", "long"));
+        IncrementalLiteralMatcher matcher = IncrementalLiteralMatcher.update(base, bytes(), bytes("long-s3cr3t"),
+                AhoCorasickLiteralMatcher::compile);
+        assertEquals("[0,4) [5,11)", find(matcher, "long-s3cr3t"));
+        matcher = IncrementalLiteralMatcher.update(matcher, bytes(), bytes("s3cr3t"), AhoCorasickLiteralMatcher::compile);
+        assertEquals("[0,4)", find(matcher, "long-s3cr3t"));
+    }
+
+    @Test
+    void isNotSerializable() {
+        IncrementalLiteralMatcher matcher = IncrementalLiteralMatcher.update(
+                AhoCorasickLiteralMatcher.compile(bytes("s3cr3t")), bytes("t0ken"), bytes(),
+                AhoCorasickLiteralMatcher::compile);
+        assertThrows(NotSerializableException.class,
+                () -> new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(matcher));
+    }
+
+    @Test
+    void updatesAnyEngine() {
+        List<Function<List<byte[]>, LiteralMatcher>> compilers = List.of(
+                RollingHashLiteralMatcher::compile, BloomFilterLiteralMatcher::compile);
+        for (Function<List<byte[]>, LiteralMatcher> compiler : compilers) {
+            IncrementalLiteralMatcher matcher = IncrementalLiteralMatcher.update(compiler.apply(bytes("s3cr3t", "p@ss")),
+                    bytes("longer-t0ken"), bytes("p@ss"), compiler);
+            assertEquals("[0,6) [12,24)", find(matcher, "s3cr3t p@ss longer-t0ken"));
+            assertEquals(12, matcher.maxLength());
+        }
+    }
+
+    @Test
+    void compilesTheAdditionsWithTheGivenCompiler() {
+        List<String> compiled = new ArrayList<>();
+        Function<List<byte[]>, LiteralMatcher> compiler = secrets -> {
+            for (byte[] secret : secrets) {
+                compiled.add(new String(secret, StandardCharsets.UTF_8));
+            }
+            return RollingHashLiteralMatcher.compile(secrets);
+        };
+        IncrementalLiteralMatcher matcher = IncrementalLiteralMatcher.update(
+                RollingHashLiteralMatcher.compile(bytes("s3cr3t")), bytes("t0ken"), bytes(), compiler);
+        // removing and adding back leaves the compiled secrets as they are
+        matcher = IncrementalLiteralMatcher.update(matcher, bytes(), bytes("s3cr3t", "t0ken"), compiler);
+        matcher = IncrementalLiteralMatcher.update(matcher, bytes("s3cr3t", "t0ken", "n3w"), bytes(), compiler);
+        assertEquals(List.of("t0ken", "n3w"), compiled);
+        assertEquals("[0,6) [7,12) [13,16)", find(matcher, "s3cr3t t0ken n3w"));
+    }
+
+    private static List<byte[]> bytes(String... secrets) {
+        List<byte[]> r = new ArrayList<>();
+        for (String secret : secrets) {
+            r.add(secret.getBytes(StandardCharsets.UTF_8));
+        }
+        return r;
+    }
+
+    private static String find(LiteralMatcher matcher, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 0, b.length, spans);
+        spans.normalize();
+        return RollingHashLiteralMatcherTest.toString(spans);
+    }
+}
@@ -0,0 +1,57 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreWithinOneEighth() {
+        for (long v = 0; v < 1_000_000; v += 7) {
+            int index = LatencyHistogram.index(v);
+            long highest = LatencyHistogram.highestValue(index);
+            assertTrue(highest >= v, v + " in bucket up to " + highest);
+            assertTrue(highest - v <= v / 8, v + " in bucket up to " + highest);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValue(index - 1) < v, v + " in bucket " + index);
+            }
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(50_000_000L);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(50_000_000L, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 501_000 && p50 <= 501_000 * 9 / 8, String.valueOf(p50));
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 991_000 && p99 <= 991_000 * 9 / 8, String.valueOf(p99));
+        assertEquals(50_000_000L, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void merges() {
+        LatencyHistogram shared = new LatencyHistogram();
+        LatencyHistogram a = new LatencyHistogram();
+        a.record(10);
+        a.record(20);
+        LatencyHistogram b = new LatencyHistogram();
+        b.record(-5);
+        b.record(Long.MAX_VALUE);
+        a.addTo(shared);
+        b.addTo(shared);
+        assertEquals(4, shared.getCount());
+        assertEquals(0, shared.getValueAtPercentile(1));
+        assertTrue(shared.getMax() > 1L << 40);
+        shared.clear();
+        assertEquals(0, shared.getCount());
+        assertEquals(0, shared.getValueAtPercentile(50));
+    }
+}
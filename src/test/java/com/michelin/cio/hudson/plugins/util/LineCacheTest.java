@@ -0,0 +1,49 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LineCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LineCache<String> cache = new LineCache<>(2);
+        cache.put(bytes("a\n"), 0, 2, "A");
+        cache.put(bytes("b\n"), 0, 2, "B");
+        assertEquals("A", cache.get(bytes("a\n"), 0, 2));
+        cache.put(bytes("c\n"), 0, 2, "C");
+
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get(bytes("a\n"), 0, 2));
+        assertNull(cache.get(bytes("b\n"), 0, 2));
+        assertEquals("C", cache.get(bytes("c\n"), 0, 2));
+    }
+
+    @Test
+    void comparesBytes() {
+        LineCache<String> cache = new LineCache<>(4);
+        // "Aa" and "BB" have the same hash
+        cache.put(bytes("Aa"), 0, 2, "Aa");
+        assertNull(cache.get(bytes("BB"), 0, 2));
+        assertEquals("Aa", cache.get(bytes("xAax"), 1, 2));
+        assertNull(cache.get(bytes("Aax"), 0, 3));
+    }
+
+    @Test
+    void ignoresLongLines() {
+        LineCache<String> cache = new LineCache<>(4);
+        byte[] line = bytes("x".repeat(LineCache.MAX_LINE_LENGTH + 1));
+        cache.put(line, 0, line.length, "X");
+        assertEquals(0, cache.size());
+        assertNull(cache.get(line, 0, line.length));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
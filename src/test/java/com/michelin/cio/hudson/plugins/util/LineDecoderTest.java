@@ -0,0 +1,40 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LineDecoderTest {
+
+    @Test
+    void decodesWholeCharactersOnly() {
+        for (Charset charset : List.of(StandardCharsets.UTF_8, Charset.forName("Shift_JIS"), Charset.forName("windows-1252"))) {
+            String text = charset.newEncoder().canEncode("\u79d8") ? "ab \u79d8\u5bc6" : "ab \u00e9t\u00e9";
+            byte[] b = text.getBytes(charset);
+            LineDecoder decoder = new LineDecoder(charset);
+            StringBuilder decoded = new StringBuilder();
+            int cut = b.length - 1;
+            int whole = decoder.decodeWhole(b, 0, cut, decoded);
+            assertEquals(decoder.wholeLength(b, cut), whole, charset.name());
+            assertEquals(decoder.decode(b, 0, whole), decoded.toString(), charset.name());
+            // then the rest, from where it stopped
+            assertEquals(b.length - whole, decoder.decodeWhole(b, whole, b.length - whole, decoded), charset.name());
+            assertEquals(text, decoded.toString(), charset.name());
+            assertEquals(b.length, decoder.wholeLength(b, b.length), charset.name());
+        }
+    }
+
+    @Test
+    void findsWhereCharactersStart() {
+        byte[] b = "a\u00e9\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        assertEquals(1, decoder.characterStart(b, 2));
+        assertEquals(3, decoder.characterStart(b, 6));
+        assertEquals(3, decoder.wholeLength(b, 6));
+        assertEquals(7, decoder.wholeLength(b, 7));
+    }
+}
@@ -66,4 +66,21 @@ class MaskPasswordsUtilTest {
         Pattern p = Pattern.compile("Secret = ([(0-9]*)");
         assertEquals(expect, MaskPasswordsUtil.patternMatch(p, input));
     }
+
+    @Test
+    void testSettledLength() {
+        List<Pattern> ps = List.of(Pattern.compile("token=(\\w+)"), Pattern.compile("abc"));
+        // a match could go on after the end
+        assertEquals(4, MaskPasswordsUtil.settledLength(ps, "get token=ab", 12));
+        // a match could start at the end
+        assertEquals(9, MaskPasswordsUtil.settledLength(ps, "Download tok", 12));
+        assertEquals(12, MaskPasswordsUtil.settledLength(ps, "Downloading.", 12));
+        // a match would straddle the limit
+        assertEquals(3, MaskPasswordsUtil.settledLength(ps, "xy abc z", 5));
+        assertEquals(7, MaskPasswordsUtil.settledLength(List.of(), "xy abc z", 7));
+        // each pattern is looked for once, not from every offset
+        String word = "a".repeat(200_000) + " ";
+        assertEquals(word.length(), MaskPasswordsUtil.settledLength(List.of(Pattern.compile("\\w+")), word, word.length()));
+        assertEquals(3, MaskPasswordsUtil.settledLength(List.of(Pattern.compile("\\w+ x")), "ab cd", 5));
+    }
 }
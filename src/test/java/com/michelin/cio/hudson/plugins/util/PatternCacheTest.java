@@ -0,0 +1,42 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternCacheTest {
+
+    @Test
+    void compilesOnce() {
+        PatternCache.clear();
+        PatternCache.resetStatistics();
+        Pattern p = PatternCache.compile("token=(\\w+)");
+        assertSame(p, PatternCache.compile(new String("token=(\\w+)")));
+        assertNotSame(p, PatternCache.compile("token=(\\w+)", Pattern.CASE_INSENSITIVE));
+        assertNotSame(p, PatternCache.compile("key=(\\w+)"));
+        assertEquals(1, PatternCache.getHits());
+        assertEquals(3, PatternCache.getMisses());
+        assertEquals(3, PatternCache.size());
+        assertTrue(p.matcher("token=abc").matches());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        PatternCache.clear();
+        PatternCache.resetStatistics();
+        Pattern first = PatternCache.compile("r0");
+        for (int i = 1; i <= PatternCache.MAX_SIZE; i++) {
+            PatternCache.compile("r" + i);
+        }
+        assertEquals(PatternCache.MAX_SIZE, PatternCache.size());
+        assertEquals(1, PatternCache.getEvictions());
+        assertNotSame(first, PatternCache.compile("r0"));
+        PatternCache.clear();
+    }
+
+}
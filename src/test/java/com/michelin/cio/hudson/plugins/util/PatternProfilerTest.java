@@ -0,0 +1,95 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternProfilerTest {
+
+    private int sampleRate;
+
+    @BeforeEach
+    void enable() {
+        sampleRate = PatternProfiler.SAMPLE_RATE;
+        PatternProfiler.SAMPLE_RATE = 1;
+        PatternProfiler.reset();
+    }
+
+    @AfterEach
+    void restore() {
+        PatternProfiler.SAMPLE_RATE = sampleRate;
+        PatternProfiler.reset();
+    }
+
+    @Test
+    void ranksPatternsByCost() {
+        List<Pattern> patterns = List.of(Pattern.compile("token=(\\w+)"), Pattern.compile("(a|aa)+c"));
+        String shortLine = "token=abc token=def";
+        String longLine = "a".repeat(28);
+        // so that the first line is not made slower by a cold JIT
+        MaskPasswordsUtil.patternMatch(patterns, shortLine, true);
+        PatternProfiler.reset();
+        MaskPasswordsUtil.patternMatch(patterns, shortLine, true);
+        MaskPasswordsUtil.patternMatch(patterns, longLine, true);
+
+        List<PatternProfiler.PatternCost> costs = PatternProfiler.getCosts();
+        assertEquals(2, costs.size());
+        PatternProfiler.PatternCost backtracking = costs.get(0);
+        assertEquals("(a|aa)+c", backtracking.getPattern());
+        assertEquals(2, backtracking.getEvaluations());
+        assertEquals(0, backtracking.getMatches());
+        assertEquals(longLine.length(), backtracking.getWorstLineLength());
+        assertEquals(2, costs.get(1).getMatches());
+        assertTrue(backtracking.getTotalNanos() > costs.get(1).getTotalNanos());
+    }
+
+    @Test
+    void tellsRegexesApartByName() {
+        List<Pattern> patterns = List.of(Pattern.compile("token=(\\w+)"), Pattern.compile("token=(\\w+)"));
+        MaskPasswordsUtil.patternMatch(patterns, "token=abc", true, Arrays.asList("TOKEN", null));
+        MaskPasswordsUtil.patternMatch(patterns.subList(0, 1), "token=abc", true, List.of("OTHER"));
+
+        List<PatternProfiler.PatternCost> costs = PatternProfiler.getCosts();
+        assertEquals(3, costs.size());
+        Set<String> keys = new HashSet<>();
+        for (PatternProfiler.PatternCost cost : costs) {
+            assertEquals("token=(\\w+)", cost.getPattern());
+            assertEquals(1, cost.getEvaluations());
+            keys.add(cost.getKey());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("TOKEN", "OTHER", null)), keys);
+    }
+
+    @Test
+    void keepsTheMostRecentlySampled() {
+        for (int i = 0; i <= PatternCache.MAX_SIZE; i++) {
+            MaskPasswordsUtil.patternMatch(List.of(Pattern.compile("token" + i)), "token0", true);
+        }
+        List<PatternProfiler.PatternCost> costs = PatternProfiler.getCosts();
+        assertEquals(PatternCache.MAX_SIZE, costs.size());
+        for (PatternProfiler.PatternCost cost : costs) {
+            assertNotEquals("token0", cost.getPattern());
+        }
+    }
+
+    @Test
+    void onlyProfilesWhenAsked() {
+        MaskPasswordsUtil.patternMatch(List.of(Pattern.compile("s3cr3t")), "s3cr3t");
+        MaskPasswordsUtil.patternMatch(List.of(Pattern.compile("s3cr3t")), "s3cr3t", false);
+        assertTrue(PatternProfiler.getCosts().isEmpty());
+
+        PatternProfiler.SAMPLE_RATE = 0;
+        MaskPasswordsUtil.patternMatch(List.of(Pattern.compile("token")), "token", true);
+        assertTrue(PatternProfiler.getCosts().isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegexAnalyzerTest {
+
+    @Test
+    void findsNestedQuantifiers() {
+        assertFinding(RegexAnalyzer.Construct.NESTED_QUANTIFIER, "(a+)+", "(a+)+");
+        assertFinding(RegexAnalyzer.Construct.NESTED_QUANTIFIER, "(\\w+\\s?)*", "token=(\\w+\\s?)*$");
+        assertFinding(RegexAnalyzer.Construct.NESTED_QUANTIFIER, "(?:x|[a-z]{2,})+", "id: (?:x|[a-z]{2,})+!");
+        assertFinding(RegexAnalyzer.Construct.NESTED_QUANTIFIER, "((?i)a*b)*", "((?i)a*b)*");
+    }
+
+    @Test
+    void findsOverlappingAlternations() {
+        assertFinding(RegexAnalyzer.Construct.OVERLAPPING_ALTERNATION, "(\\w|\\d)+", "(\\w|\\d)+c");
+        assertFinding(RegexAnalyzer.Construct.OVERLAPPING_ALTERNATION, "(a|ab)*", "x(a|ab)*y");
+        assertFinding(RegexAnalyzer.Construct.OVERLAPPING_ALTERNATION, "(?:[a-f]|[0-9A-F]|\\x41)+", "(?:[a-f]|[0-9A-F]|\\x41)+");
+        assertFinding(RegexAnalyzer.Construct.OVERLAPPING_ALTERNATION, "(a|b?)+", "(a|b?)+");
+    }
+
+    @Test
+    void acceptsSafeRegexes() {
+        for (String regex : List.of(
+                "token=(\\w+)",
+                "(?<=password=)\\S+",
+                "(a|b)+",
+                "(\\w|-)+",
+                "(foo|bar)*baz",
+                "(a+)++",
+                "(?>a+)+",
+                "(a+){3}",
+                "[\\w&&[^_]]+@(example|test)\\.com",
+                "\\Q(a+)+\\E",
+                "(\\d+\\.)?\\d+",
+                "(?i)secret[:=]\\s*([^\\s]+)")) {
+            assertEquals(List.of(), RegexAnalyzer.analyze(regex), regex);
+        }
+    }
+
+    @Test
+    void estimatesThroughput() {
+        assertTrue(RegexAnalyzer.corpus().size() > 100);
+        double simple = RegexAnalyzer.megabytesPerSecond(Pattern.compile("token=(\\w+)"));
+        double catastrophic = RegexAnalyzer.megabytesPerSecond(Pattern.compile("(\\w+\\s?)+:"));
+        assertTrue(simple > 10 * catastrophic, simple + " vs " + catastrophic);
+        assertTrue(catastrophic < 1, String.valueOf(catastrophic));
+    }
+
+    private static void assertFinding(RegexAnalyzer.Construct construct, String fragment, String regex) {
+        Pattern.compile(regex);
+        List<RegexAnalyzer.Finding> findings = RegexAnalyzer.analyze(regex);
+        assertEquals(1, findings.size(), regex + ": " + findings);
+        assertEquals(construct, findings.get(0).getConstruct(), regex);
+        assertEquals(fragment, findings.get(0).getFragment(), regex);
+    }
+}
@@ -0,0 +1,88 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingHashLiteralMatcherTest {
+
+    @Test
+    void findsEveryOccurrence() {
+        LiteralMatcher matcher = compile("s3cr3t", "abc", "bcd");
+        assertEquals("[0,6) [10,16)", find(matcher, "s3cr3t is s3cr3t"));
+        assertEquals("[1,5)", find(matcher, "xabcd"));
+        assertEquals(6, matcher.maxLength());
+    }
+
+    @Test
+    void ignoresLookAlikes() {
+        LiteralMatcher matcher = compile("s3cr3t");
+        assertEquals("", find(matcher, "s3cr3 S3CR3T s3cr4t 3cr3t"));
+        assertEquals("", find(matcher, "s3cr"));
+        assertEquals("", find(compile(), "anything"));
+    }
+
+    @Test
+    void honorsOffsetAndLength() {
+        LiteralMatcher matcher = compile("abc");
+        byte[] b = "abc abc abc".getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 2, 7, spans);
+        assertEquals("[4,7)", toString(spans));
+    }
+
+    @Test
+    void hashesDifferFromOneMatcherToTheNext() {
+        RollingHashLiteralMatcher first = (RollingHashLiteralMatcher) compile("s3cr3t");
+        RollingHashLiteralMatcher second = (RollingHashLiteralMatcher) compile("s3cr3t");
+        assertEquals(1, first.hashes(6).length);
+        assertNotEquals(first.hashes(6)[0], second.hashes(6)[0]);
+    }
+
+    @Test
+    void survivesSerialization() throws Exception {
+        LiteralMatcher matcher = compile("s3cr3t");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(matcher);
+        }
+        assertTrue(bytes.toString(StandardCharsets.ISO_8859_1).indexOf("s3cr3t") < 0);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("[2,8)", find((LiteralMatcher) in.readObject(), "a s3cr3t"));
+        }
+    }
+
+    private static LiteralMatcher compile(String... secrets) {
+        List<byte[]> literals = new ArrayList<>();
+        for (String secret : secrets) {
+            literals.add(secret.getBytes(StandardCharsets.UTF_8));
+        }
+        return RollingHashLiteralMatcher.compile(literals);
+    }
+
+    private static String find(LiteralMatcher matcher, String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        MaskSpans spans = new MaskSpans();
+        matcher.findAll(b, 0, b.length, spans);
+        spans.normalize();
+        return toString(spans);
+    }
+
+    static String toString(MaskSpans spans) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < spans.size(); i++) {
+            sb.append(i > 0 ? " " : "").append('[').append(spans.start(i)).append(',').append(spans.end(i)).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package com.michelin.cio.hudson.plugins.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SwarByteScannerTest {
+
+    @Test
+    void findsFirstOccurrenceAtAnyAlignment() {
+        SwarByteScanner scanner = SwarByteScanner.of(table('s', 0x80, 0xFF));
+        for (int at = 0; at < 40; at++) {
+            for (int value : new int[] {'s', 0x80, 0xFF}) {
+                byte[] b = new byte[40];
+                // bytes close to the ones looked for, to catch borrows between bytes
+                for (int i = 0; i < b.length; i++) {
+                    b[i] = (byte) (i % 2 == 0 ? 'r' : 0x7F);
+                }
+                b[at] = (byte) value;
+                assertEquals(at, scanner.indexOf(b, 0, b.length));
+                assertEquals(b.length, scanner.indexOf(b, at + 1, b.length));
+                assertEquals(at, scanner.indexOf(b, at < 3 ? 0 : at - 3, b.length));
+            }
+        }
+    }
+
+    @Test
+    void reportsLowestOfSeveral() {
+        SwarByteScanner scanner = SwarByteScanner.of(table('a', 'b'));
+        byte[] b = "xxxxxxxxxxxbxaxxbaxx".getBytes();
+        assertEquals(11, scanner.indexOf(b, 0, b.length));
+        assertEquals(13, scanner.indexOf(b, 12, b.length));
+        assertEquals(16, scanner.indexOf(b, 14, 16));
+        assertEquals(16, scanner.indexOf(b, 14, 17));
+    }
+
+    @Test
+    void givesUpOnTooManyBytes() {
+        assertNull(SwarByteScanner.of(table()));
+        assertNull(SwarByteScanner.of(table('a', 'b', 'c', 'd', 'e', 'f', 'g')));
+    }
+
+    private static boolean[] table(int... bytes) {
+        boolean[] table = new boolean[256];
+        for (int b : bytes) {
+            table[b] = true;
+        }
+        return table;
+    }
+}